@@ -0,0 +1,99 @@
+import rstar.FanoutCalibrator;
+import rstar.spatial.SpatialPoint;
+import util.Constants;
+import util.Trace;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * calibration mode: builds trees with several fanouts on a sample
+ * of an FSTPM input file and recommends the fanout to use.
+ */
+public class Calibration {
+    private static final int DEFAULT_SAMPLE_SIZE = 10000;
+    private static final String CALIBRATION_DIRECTORY = "calibration";
+
+    private String inputFile;
+    private int dimension;
+    private double range;
+    private int sampleSize;
+    private int[] fanouts;
+    private Trace logger;
+
+    public static void main(String[] args) {
+        Calibration controller = new Calibration(args);
+
+        System.out.println("Reading sample ...");
+        List<SpatialPoint> sample = controller.readSample();
+        System.out.println("Calibrating on " + sample.size() + " points ...");
+
+        FanoutCalibrator calibrator = new FanoutCalibrator(controller.dimension, controller.range,
+                new File(CALIBRATION_DIRECTORY));
+        int best = calibrator.calibrate(sample, controller.fanouts);
+        for (FanoutCalibrator.Result result : calibrator.getResults()) {
+            controller.logger.trace(result.toString());
+        }
+        controller.logger.trace("Recommended fanout: M = " + best + ", m = " + Constants.minChildrenFor(best));
+    }
+
+    public Calibration(String[] args) {
+        if (args.length >= 3) {
+            this.inputFile = args[0];
+            this.dimension = Integer.parseInt(args[1]);
+            this.range = Double.parseDouble(args[2]);
+            this.sampleSize = args.length >= 4 ? Integer.parseInt(args[3]) : DEFAULT_SAMPLE_SIZE;
+
+            if (args.length >= 5) {
+                String[] split = args[4].split(",");
+                fanouts = new int[split.length];
+                for (int i = 0; i < split.length; i++) {
+                    fanouts[i] = Integer.parseInt(split[i].trim());
+                }
+            } else {
+                fanouts = new int[]{10, 25, 50, 100, 200, Constants.maxChildrenForPage(Constants.PAGESIZE, dimension)};
+            }
+        } else {
+            this.printUsage();
+            System.exit(1);
+        }
+        logger = Trace.getLogger(this.getClass().getSimpleName());
+    }
+
+    protected List<SpatialPoint> readSample() {
+        List<SpatialPoint> sample = new ArrayList<SpatialPoint>();
+        int lineNum = 0;
+        try {
+            BufferedReader input = new BufferedReader(new FileReader(inputFile));
+            String line = input.readLine();         // skip the header line
+
+            while ((line = input.readLine()) != null && sample.size() < sampleSize) {
+                lineNum++;
+                String[] lineSplit = line.split(",");
+                try {
+                    float[] point = new float[dimension];
+                    for (int i = 0; i < dimension; i++) {
+                        point[i] = Float.parseFloat(lineSplit[i + 1]);
+                    }
+                    sample.add(new SpatialPoint(point, Float.parseFloat(lineSplit[0]),
+                            lineSplit[dimension + 1], Integer.parseInt(lineSplit[dimension + 2])));
+                } catch (Exception e) {
+                    logger.traceError("Exception while processing line " + lineNum + ". Skipped. message: " + e.getMessage());
+                }
+            }
+            input.close();
+        } catch (IOException e) {
+            logger.traceError("Error while reading input file " + inputFile);
+        }
+        return sample;
+    }
+
+    protected void printUsage() {
+        System.err.println("Usage: " + this.getClass().getSimpleName() +
+                " <path to input file> <dimension of points> <range> [sample size] [comma separated fanouts].\n");
+    }
+}
@@ -1,27 +1,92 @@
 import static util.Utils.getMedian;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import rstar.CoLocatedIndex;
+import rstar.Durability;
 import rstar.RStarTree;
+import rstar.StorageMode;
+import rstar.TreeConfig;
 import rstar.spatial.SpatialPoint;
+import util.Constants;
+import util.EventLoader;
+import util.EventTable;
+import util.LabelDictionary;
+import util.PatternTable;
+import util.SpaceSaving;
 import util.Trace;
+import algorithms.CliqueEnumerator;
+import algorithms.Engine;
+import algorithms.JoinlessMiner;
+import algorithms.LevelWiseMiner;
+import algorithms.Semantics;
 import algorithms.Version1;
 
 public class FSTPM {
+	/** pivots mined as one unit of work */
+	private static final int PIVOT_BLOCK_SIZE = 50;
+	/** blocks mined ahead of the one being added up, per thread */
+	private static final int BLOCKS_PER_THREAD = 2;
+	/** the counts so far are written after this many pivots, a multiple of PIVOT_BLOCK_SIZE */
+	private static final int CHECKPOINT_INTERVAL = 5000;
+	/** counters kept for each of the top K patterns asked for, without a minimum support */
+	private static final int TOP_K_COUNTERS = 16;
+	/** counters kept for any K; as long as there are fewer patterns, the top K are exact */
+	private static final int MIN_TOP_K_COUNTERS = 1 << 16;
+	/** most frequent first; ties by size and labels, so a result does not
+	 * depend on the order the engine found the patterns in */
+	private static final Comparator<Map.Entry<List<String>, Integer>> RESULT_ORDER = new Comparator<Map.Entry<List<String>, Integer>>() {
+		@Override
+		public int compare(Map.Entry<List<String>, Integer> entry1, Map.Entry<List<String>, Integer> entry2) {
+			if (!entry1.getValue().equals(entry2.getValue()))
+				return entry2.getValue() - entry1.getValue();
+			List<String> key1 = entry1.getKey();
+			List<String> key2 = entry2.getKey();
+			if (key1.size() != key2.size())
+				return key1.size() - key2.size();
+			for (int i = 0; i < key1.size(); i++) {
+				int order = key1.get(i).compareTo(key2.get(i));
+				if (order != 0)
+					return order;
+			}
+			return 0;
+		}
+	};
+
 	private RStarTree tree;
+	private CoLocatedIndex index;
+	private LabelDictionary labels;
+	private EventTable events;
 	private Version1 alg1;
+	private Engine engine;
+	private CliqueEnumerator cliques;
+	private int minSupport;
+	private int topK;
+	private double minPrevalence;
+	// events ordered by oid, for the star neighbourhoods of the join-less engine
+	private int[] eventsByOid;
+	private List<Map.Entry<List<String>, Integer>> result;
     private int dimension;
+    private int threads;
     private double range;
     private int duration;
     private double diff;
@@ -34,6 +99,7 @@ public class FSTPM {
 	private List<Long> labelRunTime;
 	private List<Long> rCheckRunTime;
 	private List<Long> fstpmRunTime;
+	private Map<String, String> options;
     private Trace logger;
 
     public static void main(String[] args) {
@@ -49,7 +115,7 @@ public class FSTPM {
         controller.writeRuntimeToFile(controller.rangeRunTime, "RangeSearch_runtime.txt");
         controller.writeRuntimeToFile(controller.durationRunTime, "DurationCheck_runtime.txt");
         controller.writeRuntimeToFile(controller.candsRunTime, "Candidates_runtime.txt");
-        controller.writeRuntimeToFile(controller.candsRunTime, "rCheck_runtime.txt");
+        controller.writeRuntimeToFile(controller.rCheckRunTime, "rCheck_runtime.txt");
         controller.writeRuntimeToFile(controller.labelRunTime, "LabelPattern_runtime.txt");
         controller.writeRuntimeToFile(controller.fstpmRunTime, "FSTPM_runtime.txt");
 
@@ -57,20 +123,38 @@ public class FSTPM {
 	}
 
 	public FSTPM(String[] args) {
-		if(args.length == 4){
+		if(args.length >= 4){
 			this.inputFile = args[0];
             this.dimension = Integer.parseInt(args[1]);
             this.range = Double.parseDouble(args[2]);
             this.duration = Integer.parseInt(args[3]);
             
             this.resultFile = this.getClass().getSimpleName() + "r" + this.range + "d" + this.duration + "_Results.txt";
+            this.options = parseOptions(args, 4);
 
 		} else {
 			this.printUsage();
 			System.exit(1);
 		}
-		tree = new RStarTree(dimension);
+		String fanout = option("fanout", String.valueOf(Constants.DEFAULT_MAX_CHILDREN));
+		TreeConfig config = fanout.equals("page") ? TreeConfig.forPage(dimension, new File("."))
+				: new TreeConfig(dimension, Integer.parseInt(fanout), new File("."));
+		tree = new RStarTree(config, StorageMode.fromName(option("storage", "disk")));
+		tree.setDurability(Durability.fromName(option("durability", "batch")));
+		tree.clear();
+		tree.setReadAhead(Integer.parseInt(option("readahead", "0")));
+		if (Boolean.parseBoolean(option("dedup", "false")))
+			index = new CoLocatedIndex(tree);
 		alg1 = new Version1();
+		engine = Engine.fromName(option("engine", "combination"));
+		minSupport = Integer.parseInt(option("minSupport", "1"));
+		topK = Integer.parseInt(option("topK", "0"));
+		minPrevalence = Double.parseDouble(option("minPrevalence", "0.1"));
+		cliques = new CliqueEnumerator(alg1, Boolean.parseBoolean(option("pairwise", "false")));
+		labels = new LabelDictionary();
+		alg1.setLabels(labels);
+		alg1.setSemantics(Semantics.fromName(option("semantics", "ordered")));
+		threads = Integer.parseInt(option("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
 		this.insertRunTime = new ArrayList<Long>();
 		this.rangeRunTime = new ArrayList<Long>();
 		this.durationRunTime = new ArrayList<Long>();
@@ -81,35 +165,51 @@ public class FSTPM {
         logger = Trace.getLogger(this.getClass().getSimpleName());
 	}
 
+	/**
+	 * @param minSupport number of pivots a pattern has to be found at to be reported
+	 */
+	public void setMinSupport(int minSupport) {
+		this.minSupport = minSupport;
+	}
+
+	/**
+	 * @param topK number of the most frequent patterns reported, 0 for all
+	 */
+	public void setTopK(int topK) {
+		this.topK = topK;
+	}
+
+	/**
+	 * @return the patterns of the last patternExtraction and their counts,
+	 * most frequent first, or null if none has finished
+	 */
+	public List<Map.Entry<List<String>, Integer>> getResult() {
+		return result;
+	}
+
 	protected void processInput() {
-        float oid;
-        float[] point;
         long start, end;
         int lineNum = 0;
-        String label;
-        int time;
 
         try {
-            BufferedReader input =  new BufferedReader(new FileReader(this.inputFile));
-            String line;
+            // parse the whole file on all threads first, then insert in file order
+            EventLoader loader = new EventLoader(new File(this.inputFile), dimension, threads);
+            events = loader.load(labels);
             String[] lineSplit;
-        	String ini;
-			
-        	ini = input.readLine();
+        	String ini = loader.getHeader();
             
-        	while ((line = input.readLine()) != null) {
+        	for (int event = 0; event < events.size(); event++) {
 				lineNum++;
-                lineSplit = line.split(",");
 
                 //insertion
 				try {
-                    oid = Float.parseFloat(lineSplit[0]);
-                    point = extractPoint(lineSplit, 1);
-                    label = lineSplit[3];
-                    time = Integer.parseInt(lineSplit[4]);
+                    SpatialPoint point = events.getPoint(event, labels);
 
                     start = System.currentTimeMillis();
-					tree.insert(new SpatialPoint(point, oid, label, time));
+					if (index != null)
+						index.insert(point);
+					else
+						tree.insert(point);
                     end = System.currentTimeMillis();
 
                     insertRunTime.add(end - start);
@@ -125,29 +225,34 @@ public class FSTPM {
                     break;
                 }
 			}
+        	if (loader.getErrorLine() > 0 && lineNum == events.size()) {
+                logger.traceError("Exception while processing line " + loader.getErrorLine() +
+                        ". Skipped Insertion. message: " + loader.getError());
+            }
         	lineSplit = ini.split(",");
         	alg1.setting(Double.parseDouble(lineSplit[0]), Double.parseDouble(lineSplit[1]), Double.parseDouble(lineSplit[2]));
         	diff = Double.parseDouble(lineSplit[2]);
         	
-			input.close();
             tree.save();
+            if (index != null)
+                logger.trace(index.size() + " points at " + index.locationCount() + " distinct locations");
+            if (Boolean.parseBoolean(option("compact", "false")))
+                tree.compact();
+            String snapshot = option("snapshot", null);
+            if (snapshot != null && tree.exportSnapshot(new File(snapshot)) == 1)
+                logger.trace("Snapshot of the tree written to " + snapshot);
+            long pinBudget = Long.parseLong(option("pin", "0")) * 1024 * 1024;
+            if (pinBudget > 0) {
+                tree.setPinnedMemory(pinBudget);
+                logger.trace("Pinned " + tree.pinnedNodes() + " internal nodes, about " +
+                        tree.pinnedBytes() / 1024 + " KB");
+            }
 		}
 		catch (Exception e) {
 			logger.traceError("Error while reading input file. Line " + lineNum + " Skipped\nError Details:");
 		}
 	}
 
-    private float[] extractPoint(String[] points, int startPos) throws NumberFormatException
-    {
-        float[] tmp = new float[this.dimension];
-        for (int i = startPos, lineSplitLength = points.length;
-             ((i < lineSplitLength) && (i < (startPos + this.dimension))); i++)
-        {
-            tmp[i-startPos] = Float.parseFloat(points[i]);
-        }
-        return tmp;
-    }
-
 	protected void printResults() {
 		logger.trace("\nPerforming Run Time calculations..");
 
@@ -259,9 +364,47 @@ public class FSTPM {
         }
 	}
 
+	/**
+	 * parses the optional key=value arguments that follow the required ones
+	 */
+	private Map<String, String> parseOptions(String[] args, int start) {
+		Map<String, String> parsed = new HashMap<String, String>();
+		for (int i = start; i < args.length; i++) {
+			String[] option = args[i].split("=", 2);
+			if (option.length != 2) {
+				this.printUsage();
+				System.exit(1);
+			}
+			parsed.put(option[0], option[1]);
+		}
+		return parsed;
+	}
+
+	private String option(String name, String defaultValue) {
+		String value = options.get(name);
+		return value == null ? defaultValue : value;
+	}
+
 	protected void printUsage() {
 		System.err.println("Usage: "+ this.getClass().getSimpleName() +
-                " <path to input file> <dimension of points> <range> <duration>.\n");
+                " <path to input file> <dimension of points> <range> <duration> [options].\n" +
+                "options:\n" +
+                "  storage=disk|heap|offheap   where the R* tree keeps its nodes (default disk)\n" +
+                "  fanout=<M>|page             most children of a tree node, or as many as fit in a page (default 10)\n" +
+                "  threads=<threads>           threads for parsing the input and mining (default number of cores)\n" +
+                "  readahead=<threads>         I/O threads for loading nodes ahead in range searches (default 0)\n" +
+                "  durability=none|batch|sync  crash safety of the tree: journal off, group commit, sync per insert (default batch)\n" +
+                "  pin=<MB>                    memory for keeping the internal tree nodes resident (default 0)\n" +
+                "  snapshot=<file>             also write a read-only snapshot of the finished tree for query workers\n" +
+                "  dedup=true|false            one tree entry per distinct location, with the events there in a posting list (default false)\n" +
+                "  compact=true|false          rewrite the tree in breadth-first order before mining (default false)\n" +
+                "  engine=combination|levelwise|clique|joinless how candidate patterns are generated (default combination)\n" +
+                "  minSupport=<pivots>         only patterns found at this many pivots (default 1)\n" +
+                "  topK=<patterns>             only this many of the most frequent patterns, 0 for all (default 0);\n" +
+                "                              without minSupport their counts may be approximate past 65536 patterns\n" +
+                "  pairwise=true|false         clique engine: all members of a pattern in range of each other, not only of the pivot (default false)\n" +
+                "  semantics=ordered|multiset|sequence  labels pivot first, as a multiset, or in order of time (default ordered)\n" +
+                "  minPrevalence=<0~1>         joinless engine: participation index a co-location needs (default 0.1)\n");
 	}
 	
 	//////////////// r-tree///////////////////
@@ -269,33 +412,162 @@ public class FSTPM {
 	
 	//////////////// FSTPM ///////////////////
 	protected void patternExtraction(){
-		float oid;
-        float[] point;
-        long start, end;
-        long startrc, startlb, endrc, endlb;
         int lineNum = 0;
-        int time;
-        int count = 0;
-		HashMap<List<String>, Integer> pattern = new HashMap<List<String>, Integer>();
+		PatternTable pattern = new PatternTable();
+		ExecutorService executor = null;
+		if (engine == Engine.JOINLESS) {
+			eventsByOid = events.orderByOid();
+			// neighbours are told apart by oid, so the engine cannot run
+			int duplicate = events.duplicateOid(eventsByOid);
+			if (duplicate >= 0) {
+				logger.traceError("Error while processing line " + (duplicate + 1) +
+						". Skipped Pattern Extraction. message: oid " + events.getOid(duplicate) + " is not unique");
+				return;
+			}
+		}
         
 		try{
-			BufferedReader input =  new BufferedReader(new FileReader(this.inputFile));
-			String line;
-			String[] lineSplit;
+			// For all nodes, as parsed by processInput. Pivots are mined in
+			// blocks, and the counts of the blocks are added up in pivot order,
+			// so the result is the same for any number of threads. Only a few
+			// blocks are mined ahead, each is dropped once it is added up
+			Deque<Future<PivotBlock>> mined = new ArrayDeque<Future<PivotBlock>>();
+			// without threads one block is mined again and again
+			PivotBlock single = null;
+			if (threads > 1 && events.size() > PIVOT_BLOCK_SIZE) {
+				executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "fstpm-miner");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			} else {
+				single = new PivotBlock(0, 0);
+			}
+			int submitted = 0;
+
+			// with a minimum support the level-wise engine counts at the end,
+			// the other engines count the pivots of each pattern as they go
+			LevelWiseMiner miner = engine == Engine.LEVELWISE && minSupport > 1 ? new LevelWiseMiner(minSupport, alg1.getSemantics()) : null;
+			PatternTable support = countsSupport() ? new PatternTable() : null;
+			// without one, only the counts of likely top K patterns are kept
+			SpaceSaving summary = topK > 0 && minSupport <= 1 ? new SpaceSaving(Math.max(topK * TOP_K_COUNTERS, MIN_TOP_K_COUNTERS)) : null;
+			JoinlessMiner joinless = null;
+			if (engine == Engine.JOINLESS) {
+				int[] eventLabels = new int[events.size()];
+				for (int event = 0; event < eventLabels.length; event++) {
+					eventLabels[event] = events.getLabel(event);
+				}
+				joinless = new JoinlessMiner(eventLabels, minPrevalence);
+				summary = null;
+			}
+			while (lineNum < events.size()) {
+				PivotBlock block;
+				if (executor != null) {
+					while (mined.size() < threads * BLOCKS_PER_THREAD && submitted < events.size()) {
+						mined.add(executor.submit(new PivotBlock(submitted, Math.min(submitted + PIVOT_BLOCK_SIZE, events.size()))));
+						submitted += PIVOT_BLOCK_SIZE;
+					}
+					block = mined.poll().get();
+				} else {
+					block = single.reset(lineNum, Math.min(lineNum + PIVOT_BLOCK_SIZE, events.size())).call();
+				}
+				block.addTo(pattern, support, summary, miner);
+				if (joinless != null)
+					joinless.addStars(block.from, block.stars);
+				lineNum = block.to;
+				if (miner == null && joinless == null && block.to % CHECKPOINT_INTERVAL == 0) {
+					String fname = "output" + Integer.toString(block.to) + ".txt";
+					writeResult(fname, rank(pattern, support, summary));
+				}
+			}
+			if (miner != null)
+				miner.mine(pattern);
+			if (joinless != null) {
+				// the count of a co-location is its number of instances
+				List<JoinlessMiner.Pattern> prevalent = joinless.mine();
+				for (JoinlessMiner.Pattern colocation : prevalent) {
+					pattern.add(colocation.getLabels(), colocation.getLabels().length, colocation.getInstances());
+				}
+				writePrevalence("prevalence.txt", prevalent);
+			}
 			
-			line = input.readLine();
-			// For all nodes
-			while ((line = input.readLine()) != null) {
-				lineNum++;
-                lineSplit = line.split(",");
-                count++;
+			result = rank(pattern, support, summary);
+			if (summary != null && summary.getError() > 0)
+				logger.trace("Counts of the top " + topK + " patterns may be up to " + summary.getError() + " too high");
+			writeResult("output.txt", result);
+		}
+		catch (Exception e) {
+			logger.traceError("Error while reading input file. Line " + lineNum + " Skipped\nError Details:");
+		}
+		finally {
+			if (executor != null)
+				executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * mines the pivots of a range of events into a pattern count
+	 * table and run times of its own
+	 */
+	private class PivotBlock implements Callable<PivotBlock> {
+		private int from;
+		private int to;
+		private PatternTable pattern;
+		// pivots per pattern, if the engine does not count them itself
+		private PatternTable support;
+		// neighbours after each pivot, for the join-less engine
+		private int[][] stars;
+		private final List<Long> rangeTimes = new ArrayList<Long>();
+		private final List<Long> durationTimes = new ArrayList<Long>();
+		private final List<Long> candsTimes = new ArrayList<Long>();
+		private final List<Long> rCheckTimes = new ArrayList<Long>();
+		private final List<Long> labelTimes = new ArrayList<Long>();
+		// label ids and times of the pivots and their valid neighbours, for the level-wise miner
+		private final List<int[]> neighbourhoods = new ArrayList<int[]>();
+		private final List<long[]> neighbourTimes = new ArrayList<long[]>();
+
+		PivotBlock(int from, int to) {
+			reset(from, to);
+		}
+
+		/**
+		 * makes the block mine another range of events, with empty counts
+		 * and run times; the ones added up before are not touched
+		 */
+		PivotBlock reset(int from, int to) {
+			this.from = from;
+			this.to = to;
+			pattern = new PatternTable();
+			support = countsSupport() ? new PatternTable() : null;
+			stars = engine == Engine.JOINLESS ? new int[to - from][] : null;
+			rangeTimes.clear();
+			durationTimes.clear();
+			candsTimes.clear();
+			rCheckTimes.clear();
+			labelTimes.clear();
+			neighbourhoods.clear();
+			neighbourTimes.clear();
+			return this;
+		}
+
+		@Override
+		public PivotBlock call() {
+			float oid;
+			long start, end;
+			long startrc, startlb, endrc, endlb;
+			int time;
+
+			for (int event = from; event < to; event++) {
+				int lineNum = event + 1;
                 
                 try{
                 	// Pick one node to be pivot : center
-                    oid = Float.parseFloat(lineSplit[0]);
-                    point = extractPoint(lineSplit, 1);
-                    time = Integer.parseInt(lineSplit[4]);
-                    SpatialPoint center = new SpatialPoint(point);
+                    oid = events.getOid(event);
+                    time = events.getTime(event);
+                    SpatialPoint center = new SpatialPoint(events.getCords(event));
                     
 
                     System.out.println("\nprocessing node " + oid);
@@ -304,12 +576,14 @@ public class FSTPM {
                     
                     System.out.println("Range search begin...");
                     // Find all neighbors within 2R
-                    //System.out.println(center.getCords()[0] + "   " + center.getCords()[1] + "  " + this.range*0.01*2*diff*100000);
+                    //System.out.println(center.getCords()[0] + "   " + center.getCords()[1] + "  " + range*0.01*2*diff*100000);
                     start = System.currentTimeMillis();
-                    List<SpatialPoint> result = tree.rangeSearch(center, this.range*0.01*2*diff/100000);    
+                    List<SpatialPoint> result = index != null
+                            ? index.rangeSearch(center, range*0.01*2*diff/100000)
+                            : tree.rangeSearch(center, range*0.01*2*diff/100000);
                     end = System.currentTimeMillis();                    
                     
-                    rangeRunTime.add(( end - start ));  
+                    rangeTimes.add(( end - start ));  
                     
                                        
                     System.out.println("Duration check begin...");
@@ -318,36 +592,51 @@ public class FSTPM {
                     result = alg1.durationCheck(result, time, oid, duration);
                     end = System.currentTimeMillis();                    
                     
-                    durationRunTime.add(( end - start ));  
+                    durationTimes.add(( end - start ));  
+
+                    System.out.println("Range check begin...");
+                    // Second filtering : remove nodes out of range, each checked once
+                    startrc = System.currentTimeMillis();
+                    List<SpatialPoint> valid = alg1.validNeighbours(result, center, range);
+                    endrc = System.currentTimeMillis();
+
+                    rCheckTimes.add(endrc - startrc);
+
+                    if (stars != null) {
+                    	// only the star is kept, co-locations are mined over all of them
+                    	stars[event - from] = star(valid);
+                    	continue;
+                    }
 
                     
                     System.out.println("Cands generation begin...");
-                    // Generate all possible pattern : candidates
-                    if(result.size() > 1){
+                    // Count the label patterns of all candidates, labelled as they are walked
+                    if(valid.size() > 1){
                         start = System.currentTimeMillis();
-                    	List<List<SpatialPoint>> candidates = alg1.candExtraction(result);      
-            		
-                    	startrc = System.currentTimeMillis();
-                    	// Second filtering : check whether all nodes in one candidate are located within range R
-                    	List<List<SpatialPoint>> stPattern = new ArrayList<List<SpatialPoint>>();
-                    	for(int i = 0; i < candidates.size(); i++){
-                    		if(alg1.rangeCheck(candidates.get(i), center, range) == true){
-                    			stPattern.add(candidates.get(i));
-                    		}
+                    	// counted apart first if each pattern of the pivot adds one to its support
+                    	PatternTable counts = support != null ? new PatternTable() : pattern;
+                    	if (engine == Engine.LEVELWISE && minSupport > 1) {
+                    		// pruned by support, so counted over all pivots once they are collected
+                    		neighbourhoods.add(alg1.labelIds(valid));
+                    		neighbourTimes.add(alg1.times(valid));
+                    	} else if (engine == Engine.CLIQUE) {
+                    		cliques.count(valid, range, counts);
+                    	} else {
+                    		// without a minimum support the level-wise engine has nothing to prune
+                    		alg1.combinationCount(valid, counts);
                     	}
-                    	endrc = System.currentTimeMillis();  
-                        rCheckRunTime.add(endrc - startrc);                  
+                        end = System.currentTimeMillis();
+                        candsTimes.add(end - start);
                     	                    	
-                        System.out.println("Cords to Label begin...");
+                        System.out.println("Support count begin...");
                         startlb = System.currentTimeMillis();
-                    	// change node pattern to label pattern and count frequency
-                    	alg1.cordsToLabel(stPattern, pattern);
+                    	// the patterns of the pivot add one each to their support
+                    	if (support != null) {
+                    		pattern.addAll(counts);
+                    		support.addPatterns(counts);
+                    	}
                     	endlb = System.currentTimeMillis();      
-                        labelRunTime.add(endlb - startlb);              
-                        
-                        
-                        end = System.currentTimeMillis();     
-                        candsRunTime.add(( (end - start) -(endrc - startrc) -(endlb - startlb) ));
+                        labelTimes.add(endlb - startlb);              
                     }              
                     
                 }
@@ -359,33 +648,130 @@ public class FSTPM {
                     logger.traceError("Error while processing line " + lineNum +
                             ". Skipped range search. message: "+error.getMessage());
                 } 
-                if(count % 5000 == 0){
-                	String fname = "output" + Integer.toString(count) + ".txt";
-                	writeResult(fname, pattern);
-                }
-			}			
-			
-			writeResult("output.txt", pattern);
-			
-			input.close();
+			}
+			return this;
 		}
-		catch (Exception e) {
-			logger.traceError("Error while reading input file. Line " + lineNum + " Skipped\nError Details:");
+
+		/**
+		 * @param valid the pivot followed by its neighbours in range
+		 * @return event indexes of the neighbours
+		 */
+		private int[] star(List<SpatialPoint> valid) {
+			int[] star = new int[Math.max(0, valid.size() - 1)];
+			for (int i = 0; i < star.length; i++) {
+				float oid = valid.get(i + 1).getOid();
+				star[i] = events.findOid(eventsByOid, oid);
+				if (star[i] < 0)
+					throw new IllegalStateException("no event with oid " + oid);
+			}
+			return star;
+		}
+
+		/**
+		 * adds the counts and run times of this block to the totals
+		 */
+		void addTo(PatternTable total, PatternTable totalSupport, SpaceSaving summary, LevelWiseMiner miner) {
+			if (summary != null)
+				summary.addAll(pattern);
+			else
+				total.addAll(pattern);
+			if (support != null)
+				totalSupport.addAll(support);
+			for (int i = 0; i < neighbourhoods.size(); i++) {
+				if (neighbourhoods.get(i).length > 0)
+					miner.add(neighbourhoods.get(i), neighbourTimes.get(i));
+			}
+			rangeRunTime.addAll(rangeTimes);
+			durationRunTime.addAll(durationTimes);
+			candsRunTime.addAll(candsTimes);
+			rCheckRunTime.addAll(rCheckTimes);
+			labelRunTime.addAll(labelTimes);
 		}
 	}
 	
-	private void writeResult(String fname, HashMap<List<String>, Integer> pattern) throws IOException{
+	/**
+	 * @param support pivots per pattern, null if all patterns of the table are frequent
+	 * @param summary counts of the likely top K patterns, used instead of the table if not null
+	 * @return the patterns found at minSupport pivots or more, most frequent first,
+	 * only the first topK if topK > 0. The top K are kept in a bounded heap, so
+	 * the patterns left out are neither sorted nor turned into labels
+	 */
+	private List<Map.Entry<List<String>, Integer>> rank(PatternTable pattern, final PatternTable support, SpaceSaving summary) {
+		final List<Map.Entry<List<String>, Integer>> all = new ArrayList<Map.Entry<List<String>, Integer>>();
+		final PriorityQueue<Map.Entry<List<String>, Integer>> best = topK > 0
+				? new PriorityQueue<Map.Entry<List<String>, Integer>>(topK + 1, Collections.reverseOrder(RESULT_ORDER)) : null;
+		PatternTable.Visitor collect = new PatternTable.Visitor() {
+			@Override
+			public void visit(int[] ids, int length, int count) {
+				if (support != null && support.get(ids, length) < minSupport)
+					return;
+				if (best != null && best.size() == topK && count < best.peek().getValue())
+					return;
+				Map.Entry<List<String>, Integer> entry = new AbstractMap.SimpleEntry<List<String>, Integer>(toLabels(ids, length), count);
+				if (best == null) {
+					all.add(entry);
+				} else {
+					best.offer(entry);
+					if (best.size() > topK)
+						best.poll();
+				}
+			}
+		};
+		if (summary != null)
+			summary.forEach(collect);
+		else
+			pattern.forEach(collect);
+		List<Map.Entry<List<String>, Integer>> ranked = best == null ? all : new ArrayList<Map.Entry<List<String>, Integer>>(best);
+		Collections.sort(ranked, RESULT_ORDER);
+		return ranked;
+	}
+
+	private List<String> toLabels(int[] ids, int length) {
+		List<String> key = new ArrayList<String>(length);
+		for (int i = 0; i < length; i++) {
+			key.add(labels.get(ids[i]));
+		}
+		// label ids follow the input, names do not
+		if (alg1.getSemantics() == Semantics.MULTISET || engine == Engine.JOINLESS)
+			Collections.sort(key);
+		return key;
+	}
+
+	/**
+	 * true if the pivots of each pattern are counted while mining, to report
+	 * only the patterns found at minSupport pivots
+	 */
+	private boolean countsSupport() {
+		return minSupport > 1 && engine != Engine.LEVELWISE && engine != Engine.JOINLESS;
+	}
+
+	/**
+	 * writes the participation index of each co-location, most prevalent first
+	 */
+	private void writePrevalence(String fname, List<JoinlessMiner.Pattern> prevalent) throws IOException{
+		List<Map.Entry<List<String>, Double>> list_Data = new ArrayList<Map.Entry<List<String>, Double>>(prevalent.size());
+		for (JoinlessMiner.Pattern colocation : prevalent) {
+			List<String> key = toLabels(colocation.getLabels(), colocation.getLabels().length);
+			list_Data.add(new AbstractMap.SimpleEntry<List<String>, Double>(key, colocation.getParticipation()));
+		}
+		Collections.sort(list_Data, new Comparator<Map.Entry<List<String>, Double>>() {
+			@Override
+			public int compare(Map.Entry<List<String>, Double> entry1, Map.Entry<List<String>, Double> entry2) {
+				int order = Double.compare(entry2.getValue(), entry1.getValue());
+				return order != 0 ? order : entry1.getKey().toString().compareTo(entry2.getKey().toString());
+			}
+		});
+		FileWriter output = new FileWriter(fname);
+		for (Map.Entry<List<String>, Double> entry : list_Data) {
+			output.write(entry.getKey() + " : " + String.format(Locale.ROOT, "%.4f", entry.getValue()) + "\n");
+		}
+		output.close();
+	}
+
+	private void writeResult(String fname, List<Map.Entry<List<String>, Integer>> list_Data) throws IOException{
 		FileWriter output = new FileWriter(fname);			
-        // sort hashmap by value (frequency)
-		List<Map.Entry<List<String>, Integer>> list_Data = new ArrayList<Map.Entry<List<String>, Integer>>(pattern.entrySet());
-        Collections.sort(list_Data, new Comparator<Map.Entry<List<String>, Integer>>(){
-            public int compare(Map.Entry<List<String>, Integer> entry1,
-                               Map.Entry<List<String>, Integer> entry2){
-                return (entry2.getValue() - entry1.getValue());
-            }
-        });
         for (Map.Entry<List<String>, Integer> entry:list_Data) {
-        	output.write(entry.getKey() + " : " + pattern.get(entry.getKey()) + "\n");
+        	output.write(entry.getKey() + " : " + entry.getValue() + "\n");
         }
 		output.close();
 	}
@@ -1,5 +1,6 @@
 import rstar.RStarTree;
 import rstar.spatial.SpatialPoint;
+import util.CsvReader;
 import util.Trace;
 import util.Utils;
 
@@ -52,6 +53,7 @@ public class Q1 {
 			System.exit(1);
 		}
 		tree = new RStarTree(dimension);
+		tree.clear();
 		this.insertRunTime = new ArrayList<Long>();
 		this.searchRunTime = new ArrayList<Long>();
 		this.rangeRuntime = new ArrayList<Long>();
@@ -68,25 +70,22 @@ public class Q1 {
         int lineNum = 0;
 
         try {
-            BufferedReader input =  new BufferedReader(new FileReader(this.inputFile));
-            String line;
-            String[] lineSplit;
+            CsvReader input = new CsvReader(new File(this.inputFile));
 
-			while ((line = input.readLine()) != null) {
+			while (input.nextLine()) {
 				lineNum++;
-                lineSplit = line.split(",");
-                opType = Float.parseFloat(lineSplit[0]);
+                opType = input.getFloat(0);
 
 				switch ((int)opType) {
 				case 0:
 				{       //insertion
 					try {
-                        if (lineSplit.length != (this.dimension + 2)) {
+                        if (input.fieldCount() != (this.dimension + 2)) {
                             throw new AssertionError();
                         }
 
-                        oid = Float.parseFloat(lineSplit[1]);
-                        point = extractPoint(lineSplit, 2);
+                        oid = input.getFloat(1);
+                        point = extractPoint(input, 2);
 
                         start = System.currentTimeMillis();
 						tree.insert(new SpatialPoint(point, oid));
@@ -110,10 +109,10 @@ public class Q1 {
                     case 1:
 				{     //point search
                     try{
-                        if (lineSplit.length != this.dimension + 1) {
+                        if (input.fieldCount() != this.dimension + 1) {
                             throw new AssertionError();
                         }
-                        point = extractPoint(lineSplit, 1);
+                        point = extractPoint(input, 1);
 
                         start = System.currentTimeMillis();
                         oid = tree.pointSearch(new SpatialPoint(point));
@@ -135,12 +134,12 @@ public class Q1 {
                     case 2:
 				{   //range search
                     try{
-                        if (lineSplit.length != this.dimension + 2) {
+                        if (input.fieldCount() != this.dimension + 2) {
                             throw new AssertionError();
                         }
 
-                        point = extractPoint(lineSplit, 1);
-                        range = Double.parseDouble(lineSplit[this.dimension + 1]);
+                        point = extractPoint(input, 1);
+                        range = input.getDouble(this.dimension + 1);
                         SpatialPoint center = new SpatialPoint(point);
 
                         start = System.currentTimeMillis();
@@ -163,12 +162,12 @@ public class Q1 {
                     case 3:
 				{   //knn search
                     try{
-                        if (lineSplit.length != this.dimension + 2) {
+                        if (input.fieldCount() != this.dimension + 2) {
                             throw new AssertionError();
                         }
 
-                        point = extractPoint(lineSplit, 1);
-                        k = Float.parseFloat(lineSplit[this.dimension + 1]);
+                        point = extractPoint(input, 1);
+                        k = input.getFloat(this.dimension + 1);
                         SpatialPoint center = new SpatialPoint(point);
 
                         start = System.currentTimeMillis();
@@ -201,13 +200,13 @@ public class Q1 {
 		}
 	}
 
-    private float[] extractPoint(String[] points, int startPos) throws NumberFormatException
+    private float[] extractPoint(CsvReader input, int startPos) throws NumberFormatException
     {
         float[] tmp = new float[this.dimension];
-        for (int i = startPos, lineSplitLength = points.length;
+        for (int i = startPos, lineSplitLength = input.fieldCount();
              ((i < lineSplitLength) && (i < (startPos + this.dimension))); i++)
         {
-            tmp[i-startPos] = Float.parseFloat(points[i]);
+            tmp[i-startPos] = input.getFloat(i);
         }
         return tmp;
     }
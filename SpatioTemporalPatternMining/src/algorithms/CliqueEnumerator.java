@@ -0,0 +1,127 @@
+package algorithms;
+
+import java.util.Arrays;
+import java.util.List;
+
+import rstar.spatial.SpatialPoint;
+import util.PatternTable;
+
+/**
+ * enumerates the patterns of a pivot over a neighbour graph that is
+ * built once per pivot. The neighbours that passed the range check are
+ * the nodes of the graph; the neighbours adjacent to a node are kept
+ * in a bitset, so the distances between nodes are only computed once.
+ * A set of neighbours is extended, in the manner of Bron-Kerbosch,
+ * only by the later neighbours adjacent to all of its members, which
+ * are the intersection of their bitsets; no set is visited twice and
+ * no set is checked again after it was built.
+ *
+ * With the star semantics every neighbour in range of the pivot is
+ * adjacent to all others, like for the other engines. With the
+ * pairwise semantics two neighbours are adjacent only if they are
+ * within range of each other, so every pattern is a clique.
+ */
+public class CliqueEnumerator {
+	private Version1 alg;
+	private boolean pairwise;
+
+	/**
+	 * @param alg      range and distance checks of the settings in use
+	 * @param pairwise true if all members of a pattern have to be in
+	 *                 range of each other, not only of the pivot
+	 */
+	public CliqueEnumerator(Version1 alg, boolean pairwise) {
+		this.alg = alg;
+		this.pairwise = pairwise;
+	}
+
+	/**
+	 * counts the patterns of a pivot into dst, pattern size = 2~10
+	 * @param valid the pivot followed by its neighbours that passed
+	 *              the range check, as returned by validNeighbours
+	 * @param range range two neighbours are adjacent within, if pairwise
+	 */
+	public void count(List<SpatialPoint> valid, double range, PatternTable dst) {
+		int n = valid.size() - 1;
+		if (n < 1) {
+			return;
+		}
+		int words = (n + 63) >>> 6;
+		long[][] adjacent = adjacency(valid.subList(1, valid.size()), range, words);
+		// the candidates of the sets of each size, one bitset per size
+		long[][] candidates = new long[Version1.MAX_NEIGHBOURS][words];
+		setFirst(candidates[0], n);
+		int[] members = new int[Version1.MAX_NEIGHBOURS];
+		extend(0, candidates, adjacent, members, alg.labelCounter(valid, dst));
+	}
+
+	/**
+	 * visits every set made of the current members and one of the
+	 * candidates of depth, then the sets it can be extended to
+	 */
+	private void extend(int depth, long[][] candidates, long[][] adjacent, int[] members, Combinations.Visitor visitor) {
+		long[] current = candidates[depth];
+		for (int word = 0; word < current.length; word++) {
+			long bits = current[word];
+			while (bits != 0) {
+				int node = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				members[depth] = node;
+				visitor.visit(members, depth + 1);
+				if (depth + 1 < candidates.length && nextCandidates(current, adjacent[node], node, candidates[depth + 1])) {
+					extend(depth + 1, candidates, adjacent, members, visitor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * dst = the candidates after node that are adjacent to it
+	 * @return false if there are none
+	 */
+	private static boolean nextCandidates(long[] current, long[] adjacent, int node, long[] dst) {
+		boolean any = false;
+		int first = node >>> 6;
+		Arrays.fill(dst, 0, first, 0L);
+		for (int word = first; word < dst.length; word++) {
+			long bits = current[word] & adjacent[word];
+			if (word == first) {
+				bits &= -2L << (node & 63);
+			}
+			dst[word] = bits;
+			any |= bits != 0;
+		}
+		return any;
+	}
+
+	/**
+	 * @return for each neighbour the bitset of the neighbours adjacent to it
+	 */
+	private long[][] adjacency(List<SpatialPoint> neighbours, double range, int words) {
+		int n = neighbours.size();
+		long[][] adjacent = new long[n][words];
+		if (!pairwise) {
+			for (int i = 0; i < n; i++) {
+				setFirst(adjacent[i], n);
+			}
+			return adjacent;
+		}
+		for (int i = 0; i < n; i++) {
+			float[] first = neighbours.get(i).getCords();
+			for (int j = i + 1; j < n; j++) {
+				float[] second = neighbours.get(j).getCords();
+				if (alg.Distance(first[0], first[1], second[0], second[1]) <= range) {
+					adjacent[i][j >>> 6] |= 1L << j;
+					adjacent[j][i >>> 6] |= 1L << i;
+				}
+			}
+		}
+		return adjacent;
+	}
+
+	private static void setFirst(long[] bits, int n) {
+		for (int i = 0; i < n; i++) {
+			bits[i >>> 6] |= 1L << i;
+		}
+	}
+}
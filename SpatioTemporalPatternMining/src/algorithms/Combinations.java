@@ -0,0 +1,45 @@
+package algorithms;
+
+/**
+ * walks the combinations of a set as arrays of indexes, without
+ * creating an object per combination
+ */
+public final class Combinations {
+	/**
+	 * receives the combinations. The array is reused for all of them,
+	 * it is only valid during the call.
+	 */
+	public interface Visitor {
+		void visit(int[] members, int size);
+	}
+
+	private Combinations() {
+	}
+
+	/**
+	 * calls visitor with every combination of size indexes out of
+	 * 0..n-1, each in ascending order, in lexicographic order
+	 */
+	public static void forEach(int n, int size, Visitor visitor) {
+		if (size <= 0 || size > n)
+			return;
+		int[] members = new int[size];
+		for (int i = 0; i < size; i++) {
+			members[i] = i;
+		}
+		while (true) {
+			visitor.visit(members, size);
+			// advance the last member that is not at its highest position
+			int i = size - 1;
+			while (i >= 0 && members[i] == n - size + i) {
+				i--;
+			}
+			if (i < 0)
+				return;
+			members[i]++;
+			for (int j = i + 1; j < size; j++) {
+				members[j] = members[j - 1] + 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package algorithms;
+
+/**
+ * how the candidate patterns of a pivot are generated
+ */
+public enum Engine {
+    /** each neighbour range checked once, then every combination of the valid ones walked as index arrays */
+    COMBINATION,
+    /** with minSupport, label patterns grown level by level over all pivots and pruned by support; without it, like COMBINATION */
+    LEVELWISE,
+    /** sets of neighbours grown over a neighbour graph built once per pivot */
+    CLIQUE,
+    /** co-locations of distinct labels from the star neighbourhoods of all events, pruned by participation index */
+    JOINLESS;
+
+    /**
+     * @param name case insensitive name of the engine, e.g. "levelwise"
+     */
+    public static Engine fromName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,231 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import util.PatternTable;
+
+/**
+ * join-less co-location mining over star neighbourhoods. The star of
+ * an event holds its neighbours that come after it, in time and then
+ * by oid; a set of events that are all neighbours of each other is
+ * therefore found exactly once, in the star of its first event.
+ *
+ * A co-location pattern is a set of distinct labels. Candidates of
+ * size k+1 are joined from prevalent patterns of size k, and only kept
+ * if all their subsets of size k are prevalent. The instances of a
+ * candidate are built from the stars of the events with one of its
+ * labels, adding one event at a time only if it is a neighbour of all
+ * events taken before. The prevalence of a pattern is its
+ * participation index: over its labels, the smallest share of the
+ * events with that label that are part of an instance. It never grows
+ * with the size of a pattern, so a pattern below the minimum is not
+ * extended.
+ */
+public class JoinlessMiner {
+	private int[] labels;
+	private double minPrevalence;
+	// neighbours after each event, ascending event index
+	private int[][] stars;
+	// events per label id
+	private int[][] eventsByLabel;
+	// events of the instances of the current candidate
+	private boolean[] participates;
+	private int instances;
+
+	/**
+	 * a prevalent pattern
+	 */
+	public static class Pattern {
+		private final int[] labels;
+		private final int instances;
+		private final double participation;
+
+		Pattern(int[] labels, int instances, double participation) {
+			this.labels = labels;
+			this.instances = instances;
+			this.participation = participation;
+		}
+
+		/**
+		 * @return label ids of the pattern, ascending
+		 */
+		public int[] getLabels() {
+			return labels;
+		}
+
+		/**
+		 * @return number of sets of events that are an instance of the pattern
+		 */
+		public int getInstances() {
+			return instances;
+		}
+
+		/**
+		 * @return participation index of the pattern, 0~1
+		 */
+		public double getParticipation() {
+			return participation;
+		}
+	}
+
+	/**
+	 * @param labels        label id of each event
+	 * @param minPrevalence participation index a pattern needs, 0~1
+	 */
+	public JoinlessMiner(int[] labels, double minPrevalence) {
+		this.labels = labels;
+		this.minPrevalence = minPrevalence;
+		this.stars = new int[labels.length][];
+		Arrays.fill(stars, new int[0]);
+		this.participates = new boolean[labels.length];
+	}
+
+	/**
+	 * @param first  index of the event of the first star
+	 * @param stars  neighbours of consecutive events that come after
+	 *               them, as event indexes; null for none
+	 */
+	public void addStars(int first, int[][] stars) {
+		for (int i = 0; i < stars.length; i++) {
+			int[] star = stars[i] == null ? new int[0] : stars[i].clone();
+			Arrays.sort(star);
+			this.stars[first + i] = star;
+		}
+	}
+
+	/**
+	 * @return the prevalent patterns of 2~10 labels
+	 */
+	public List<Pattern> mine() {
+		groupByLabel();
+		List<Pattern> prevalent = new ArrayList<Pattern>();
+		List<int[]> level = new ArrayList<int[]>();
+		for (int label = 0; label < eventsByLabel.length; label++) {
+			if (eventsByLabel[label].length > 0)
+				level.add(new int[]{label});
+		}
+
+		for (int size = 1; size <= Version1.MAX_NEIGHBOURS && level.size() > 1; size++) {
+			PatternTable kept = new PatternTable();
+			for (int[] pattern : level) {
+				kept.add(pattern, pattern.length, 1);
+			}
+			List<int[]> next = new ArrayList<int[]>();
+			for (int[] candidate : Version1.joinLevel(level, size)) {
+				if (!subsetsPrevalent(candidate, kept))
+					continue;
+				double participation = participation(candidate);
+				if (instances > 0 && participation >= minPrevalence) {
+					prevalent.add(new Pattern(candidate, instances, participation));
+					next.add(candidate);
+				}
+			}
+			level = next;
+		}
+		return prevalent;
+	}
+
+	private void groupByLabel() {
+		int labelCount = 0;
+		for (int label : labels) {
+			labelCount = Math.max(labelCount, label + 1);
+		}
+		int[] counts = new int[labelCount];
+		for (int label : labels) {
+			if (label >= 0)
+				counts[label]++;
+		}
+		eventsByLabel = new int[labelCount][];
+		for (int label = 0; label < labelCount; label++) {
+			eventsByLabel[label] = new int[counts[label]];
+			counts[label] = 0;
+		}
+		for (int event = 0; event < labels.length; event++) {
+			int label = labels[event];
+			if (label >= 0)
+				eventsByLabel[label][counts[label]++] = event;
+		}
+	}
+
+	// the subsets joined from are prevalent, the others are looked up
+	private boolean subsetsPrevalent(int[] candidate, PatternTable prevalent) {
+		int[] subset = new int[candidate.length - 1];
+		for (int skip = 0; skip < candidate.length - 2; skip++) {
+			int k = 0;
+			for (int i = 0; i < candidate.length; i++) {
+				if (i != skip)
+					subset[k++] = candidate[i];
+			}
+			if (prevalent.get(subset, subset.length) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * finds the instances of a candidate, counting them in instances
+	 * @return the participation index of the candidate
+	 */
+	private double participation(int[] candidate) {
+		instances = 0;
+		int[] members = new int[candidate.length];
+		for (int position = 0; position < candidate.length; position++) {
+			for (int center : eventsByLabel[candidate[position]]) {
+				members[position] = center;
+				extend(candidate, position, 0, members);
+			}
+		}
+
+		double participation = 1;
+		for (int label : candidate) {
+			int count = 0;
+			for (int event : eventsByLabel[label]) {
+				if (participates[event])
+					count++;
+				participates[event] = false;
+			}
+			participation = Math.min(participation, (double) count / eventsByLabel[label].length);
+		}
+		return participation;
+	}
+
+	/**
+	 * picks the events of the labels from position on out of the star
+	 * of the center, the event at members[centerPosition]
+	 */
+	private void extend(int[] candidate, int centerPosition, int position, int[] members) {
+		if (position == centerPosition) {
+			position++;
+		}
+		if (position == candidate.length) {
+			instances++;
+			for (int event : members) {
+				participates[event] = true;
+			}
+			return;
+		}
+		int[] star = stars[members[centerPosition]];
+		for (int event : star) {
+			if (labels[event] != candidate[position] || !neighbourOfAll(event, members, centerPosition, position))
+				continue;
+			members[position] = event;
+			extend(candidate, centerPosition, position + 1, members);
+		}
+	}
+
+	// every member in the star is a neighbour of the center, the ones
+	// taken before position are checked against each other
+	private boolean neighbourOfAll(int event, int[] members, int centerPosition, int position) {
+		for (int i = 0; i < position; i++) {
+			if (i != centerPosition && !neighbours(event, members[i]))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean neighbours(int first, int second) {
+		return Arrays.binarySearch(stars[first], second) >= 0 || Arrays.binarySearch(stars[second], first) >= 0;
+	}
+}
@@ -0,0 +1,180 @@
+package algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import util.PatternTable;
+
+/**
+ * level-wise (Apriori) mining with a minimum support over the
+ * neighbourhoods of all pivots. Each neighbourhood is a transaction,
+ * and the support of a pattern is the number of pivots at which it
+ * occurs. A pivot that holds a pattern also holds every sub-pattern
+ * with the pivot in it, so a candidate of size k+1 is only built if
+ * all its sub-patterns of size k are frequent. Each size is one pass
+ * over the transactions; the reported count of a frequent pattern is
+ * its number of occurrences, like for the other engines.
+ *
+ * This only holds if the pivot keeps its place in a pattern. In a
+ * multiset or a sequence the label left out of a pattern may be the
+ * pivot's, and the sub-pattern need not occur at that pivot. With
+ * those semantics all patterns are counted and filtered at the end.
+ */
+public class LevelWiseMiner {
+	private int minSupport;
+	private Semantics semantics;
+	// label ids and times of the pivot and of its neighbours that passed the range check
+	private List<int[]> transactions;
+	private List<long[]> times;
+	// the pattern last built, in the order of the semantics
+	private int[] key = new int[Version1.MAX_NEIGHBOURS + 1];
+	private long[] keyTimes = new long[Version1.MAX_NEIGHBOURS + 1];
+
+	public LevelWiseMiner(int minSupport, Semantics semantics) {
+		this.minSupport = minSupport;
+		this.semantics = semantics;
+		this.transactions = new ArrayList<int[]>();
+		this.times = new ArrayList<long[]>();
+	}
+
+	/**
+	 * @param labels label ids of the pivot followed by those of its
+	 *               neighbours that passed the range and duration checks
+	 * @param times  times of the same events
+	 */
+	public void add(int[] labels, long[] times) {
+		transactions.add(labels);
+		this.times.add(times);
+	}
+
+	/**
+	 * counts the frequent patterns of size 2~10 into dst
+	 */
+	public void mine(final PatternTable dst) {
+		if (semantics != Semantics.ORDERED) {
+			mineUnpruned(dst);
+			return;
+		}
+		// neighbour sets of the current size per transaction, as indexes
+		// into the neighbours in lexicographic order
+		List<List<int[]>> frontiers = new ArrayList<List<int[]>>(transactions.size());
+		for (int[] labels : transactions) {
+			List<int[]> level = new ArrayList<int[]>(labels.length - 1);
+			for (int i = 0; i < labels.length - 1; i++) {
+				level.add(new int[]{i});
+			}
+			frontiers.add(level);
+		}
+
+		for (int size = 1; size <= Version1.MAX_NEIGHBOURS; size++) {
+			// occurrences and number of pivots per pattern
+			PatternTable occurrences = new PatternTable();
+			final PatternTable pivots = new PatternTable();
+			for (int pivot = 0; pivot < transactions.size(); pivot++) {
+				PatternTable seen = new PatternTable();
+				for (int[] members : frontiers.get(pivot)) {
+					int length = pattern(pivot, members, -1);
+					occurrences.add(key, length, 1);
+					if (seen.get(key, length) == 0) {
+						seen.add(key, length, 1);
+						pivots.add(key, length, 1);
+					}
+				}
+			}
+
+			if (addFrequent(occurrences, pivots, dst) == 0 || size == Version1.MAX_NEIGHBOURS) {
+				break;
+			}
+
+			for (int pivot = 0; pivot < transactions.size(); pivot++) {
+				List<int[]> kept = new ArrayList<int[]>();
+				for (int[] members : frontiers.get(pivot)) {
+					if (isFrequent(pivots, pattern(pivot, members, -1)))
+						kept.add(members);
+				}
+				List<int[]> next = new ArrayList<int[]>();
+				for (int[] members : Version1.joinLevel(kept, size)) {
+					if (subPatternsFrequent(pivot, members, pivots))
+						next.add(members);
+				}
+				frontiers.set(pivot, next);
+			}
+		}
+	}
+
+	private void mineUnpruned(PatternTable dst) {
+		final PatternTable occurrences = new PatternTable();
+		final PatternTable pivots = new PatternTable();
+		for (int pivot = 0; pivot < transactions.size(); pivot++) {
+			final int transaction = pivot;
+			final PatternTable seen = new PatternTable();
+			Combinations.Visitor counter = new Combinations.Visitor() {
+				@Override
+				public void visit(int[] members, int size) {
+					int length = pattern(transaction, members, -1);
+					occurrences.add(key, length, 1);
+					seen.add(key, length, 1);
+				}
+			};
+			for (int size = 1; size <= Version1.MAX_NEIGHBOURS; size++) {
+				Combinations.forEach(transactions.get(pivot).length - 1, size, counter);
+			}
+			// each pattern seen at this pivot counts once towards its support
+			pivots.addPatterns(seen);
+		}
+		addFrequent(occurrences, pivots, dst);
+	}
+
+	/**
+	 * adds the occurrences of the patterns with enough support to dst
+	 * @return number of patterns added
+	 */
+	private int addFrequent(PatternTable occurrences, final PatternTable pivots, final PatternTable dst) {
+		final int[] frequent = new int[1];
+		occurrences.forEach(new PatternTable.Visitor() {
+			@Override
+			public void visit(int[] labels, int length, int count) {
+				if (pivots.get(labels, length) >= minSupport) {
+					dst.add(labels, length, count);
+					frequent[0]++;
+				}
+			}
+		});
+		return frequent[0];
+	}
+
+	// the two sets a candidate was joined from are frequent, the
+	// ones without another of its first size-1 members are checked
+	private boolean subPatternsFrequent(int pivot, int[] members, PatternTable pivots) {
+		for (int skip = 0; skip < members.length - 2; skip++) {
+			if (!isFrequent(pivots, pattern(pivot, members, skip)))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isFrequent(PatternTable pivots, int length) {
+		return pivots.get(key, length) >= minSupport;
+	}
+
+	/**
+	 * writes the label ids of the pivot and of the members to key
+	 * @param skip position in members left out, -1 for none
+	 * @return length of the pattern
+	 */
+	private int pattern(int pivot, int[] members, int skip) {
+		int[] labels = transactions.get(pivot);
+		long[] eventTimes = times.get(pivot);
+		key[0] = labels[0];
+		keyTimes[0] = eventTimes[0];
+		int k = 1;
+		for (int i = 0; i < members.length; i++) {
+			if (i != skip) {
+				key[k] = labels[members[i] + 1];
+				keyTimes[k++] = eventTimes[members[i] + 1];
+			}
+		}
+		semantics.arrange(key, keyTimes, k);
+		return k;
+	}
+}
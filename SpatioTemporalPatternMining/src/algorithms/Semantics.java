@@ -0,0 +1,54 @@
+package algorithms;
+
+/**
+ * which orders of the same labels count as the same pattern
+ */
+public enum Semantics {
+    /** the pivot first, then the neighbours in the order they were found */
+    ORDERED,
+    /** the labels as a multiset, so all their orders are one pattern */
+    MULTISET,
+    /**
+     * the labels in the order of their events' times, the pivot first
+     * among events of the same time and the others by label id, so the
+     * order the neighbours were found in does not matter
+     */
+    SEQUENCE;
+
+    /**
+     * @param name case insensitive name of the semantics, e.g. "multiset"
+     */
+    public static Semantics fromName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    /**
+     * puts a pattern, pivot first, into the canonical order of this
+     * semantics in place. Patterns are at most a few labels long, so
+     * they are sorted by insertion.
+     * @param labels label ids of the pattern, the pivot's first
+     * @param times  times of the events of the pattern, reordered
+     *               with the labels
+     */
+    public void arrange(int[] labels, long[] times, int length) {
+        if (this == ORDERED)
+            return;
+        // where the pivot is, in case an earlier event moved ahead of it
+        int pivot = 0;
+        for (int i = 1; i < length; i++) {
+            int label = labels[i];
+            long time = times[i];
+            int j = i - 1;
+            while (j >= 0 && (this == MULTISET ? labels[j] > label
+                    : times[j] > time || (times[j] == time && j != pivot && labels[j] > label))) {
+                if (j == pivot)
+                    pivot = j + 1;
+                labels[j + 1] = labels[j];
+                times[j + 1] = times[j];
+                j--;
+            }
+            labels[j + 1] = label;
+            times[j + 1] = time;
+        }
+    }
+}
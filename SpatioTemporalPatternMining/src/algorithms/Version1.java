@@ -1,66 +1,144 @@
 package algorithms;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import rstar.spatial.SpatialPoint;
+import util.LabelDictionary;
+import util.PatternTable;
 
 public class Version1 {
+	// a pattern holds the pivot and at most this many neighbours
+	public static final int MAX_NEIGHBOURS = 9;
+
 	private double minX;
     private double minY;
     private double diff;
+    // label ids of the patterns counted
+    private LabelDictionary labels = new LabelDictionary();
+    private Semantics semantics = Semantics.ORDERED;
 
     public void setting(double x, double y, double d){
     	minX = x;
     	minY = y;
     	diff = d;
     }
+
+    public void setLabels(LabelDictionary labels){
+    	this.labels = labels;
+    }
+
+    public LabelDictionary getLabels(){
+    	return labels;
+    }
+
+    public void setSemantics(Semantics semantics){
+    	this.semantics = semantics;
+    }
+
+    public Semantics getSemantics(){
+    	return semantics;
+    }
     
-	// generate all combination size = 2~5
-	public List<List<SpatialPoint>> candExtraction(List<SpatialPoint> src){
-		List<List<SpatialPoint>> result = new ArrayList<List<SpatialPoint>>();
-		SpatialPoint sp = new SpatialPoint();
-		SpatialPoint head = new SpatialPoint();
-		head = src.remove(0);
-		
-		// generate combination size = 2~4
-		for (int i = 2; i <= 9; i++) {
-	    	List<SpatialPoint> to = new ArrayList<SpatialPoint>();
-			for (int k = 0; k < i; k++) {
-				to.add(sp);
+	// count the label patterns of the pivot with every combination of 1~9
+	// of its neighbours, pattern size = 2~10
+	// the combinations are walked as index arrays over the neighbours,
+	// so no candidate list is built
+	// valid : the pivot followed by its neighbours that passed the range check,
+	// as returned by validNeighbours
+	public void combinationCount(List<SpatialPoint> valid, PatternTable dst){
+		if(valid.size() < 2){
+			return;
+		}
+		Combinations.Visitor counter = labelCounter(valid, dst);
+		for(int size = 1; size <= MAX_NEIGHBOURS; size++){
+			Combinations.forEach(valid.size() - 1, size, counter);
+		}
+	}
+
+	// a visitor that counts the label pattern of the pivot and the visited neighbours
+	// in the order of the semantics set, the key and its times are reused for all visits
+	// valid : the pivot followed by its neighbours that passed the range check
+	public Combinations.Visitor labelCounter(List<SpatialPoint> valid, final PatternTable dst){
+		final int[] ids = labelIds(valid);
+		final long[] times = times(valid);
+		final int[] key = new int[MAX_NEIGHBOURS + 1];
+		final long[] keyTimes = new long[MAX_NEIGHBOURS + 1];
+		return new Combinations.Visitor() {
+			@Override
+			public void visit(int[] members, int size) {
+				key[0] = ids[0];
+				keyTimes[0] = times[0];
+				for(int i = 0; i < size; i++){
+					key[i + 1] = ids[members[i] + 1];
+					keyTimes[i + 1] = times[members[i] + 1];
+				}
+				semantics.arrange(key, keyTimes, size + 1);
+				dst.add(key, size + 1, 1);
 			}
-			result.add(comb(src, to, i, src.size(), i));
-	    }
-		// add pivot to combination size = 2~4
-		// get result size = 3~5
-		for(int i = 0; i < result.size(); i++){
-			result.get(i).add(0, head);
+		};
+	}
+
+	public int[] labelIds(List<SpatialPoint> points){
+		int[] ids = new int[points.size()];
+		for(int i = 0; i < ids.length; i++){
+			ids[i] = labels.intern(points.get(i).getLabel());
 		}
-		// add pivot to other node
-		// get result size = 2
-		for (int i = 0; i < src.size(); i++){
-			List<SpatialPoint> one = new ArrayList<SpatialPoint>();
-			one.add(head);
-			one.add(src.get(i));
-			result.add(one);
+		return ids;
+	}
+
+	public long[] times(List<SpatialPoint> points){
+		long[] times = new long[points.size()];
+		for(int i = 0; i < times.length; i++){
+			times[i] = points.get(i).getTime();
 		}
-	    return result;
+		return times;
 	}
-	
-	//C(m, n) = C(m-1, n-1) + C(m-1, n)
-	private List<SpatialPoint> comb(List<SpatialPoint> from, List<SpatialPoint> to, int len, int m, int n) {
-		if (n == 0) {
-			return to;
-		} else {
-			to.set(n-1, from.get(m - 1));    	
-			if (m > n - 1) {
-				comb(from, to, len, m - 1, n - 1);
+
+	// the pivot and the neighbours that pass the range check on their own
+	// returns an empty list if the pivot itself fails the check
+	public List<SpatialPoint> validNeighbours(List<SpatialPoint> src, SpatialPoint center, double range){
+		List<SpatialPoint> valid = new ArrayList<SpatialPoint>();
+		List<SpatialPoint> single = new ArrayList<SpatialPoint>(1);
+		single.add(null);
+		for(int i = 0; i < src.size(); i++){
+			single.set(0, src.get(i));
+			if(rangeCheck(single, center, range) == true){
+				valid.add(src.get(i));
 			}
-			if (m > n) {
-				comb(from, to, len, m - 1, n);
+			else if(i == 0){
+				break;		// no pattern without the pivot
 			}
 		}
-		return to;
+		return valid;
+	}
+
+	// candidates of one size are in lexicographic order, so the ones
+	// sharing a prefix are next to each other
+	static List<int[]> joinLevel(List<int[]> level, int size){
+		List<int[]> next = new ArrayList<int[]>();
+		for(int i = 0; i < level.size(); i++){
+			int[] first = level.get(i);
+			for(int j = i + 1; j < level.size(); j++){
+				int[] second = level.get(j);
+				if(!samePrefix(first, second, size - 1)){
+					break;
+				}
+				int[] joined = Arrays.copyOf(first, size + 1);
+				joined[size] = second[size - 1];
+				next.add(joined);
+			}
+		}
+		return next;
+	}
+
+	private static boolean samePrefix(int[] first, int[] second, int length){
+		for(int i = 0; i < length; i++){
+			if(first[i] != second[i]){
+				return false;
+			}
+		}
+		return true;
 	}
 
 	public Boolean rangeCheck(List<SpatialPoint> cand, SpatialPoint center, double range){
@@ -113,31 +191,23 @@ public class Version1 {
 		return (Math.PI/180)*degrees;
 	}*/
 		
+	// a set of events is counted from the pivot that owns it: its earliest event,
+	// or the one with the lowest oid among events of the earliest time. Events at
+	// the pivot's time with a lower oid are left out, so a set found from several
+	// pivots is never generated from more than one of them
 	public List<SpatialPoint> durationCheck(List<SpatialPoint> result, int time, float oid, int duration){
 		List<SpatialPoint> re = new ArrayList<SpatialPoint>(1);
 		int size = result.size();
 		
 		for(int i = 0; i < size ; i++){
-			if(result.get(i).getOid() == oid)
-				re.add(0, result.get(i));
-			else if(result.get(i).getTime() - time < duration && result.get(i).getTime() - time >= 0)
-				re.add(result.get(i));
+			SpatialPoint point = result.get(i);
+			long offset = point.getTime() - time;
+			if(point.getOid() == oid)
+				re.add(0, point);
+			else if(offset < duration && (offset > 0 || (offset == 0 && point.getOid() > oid)))
+				re.add(point);
 		}		
 		return re;
 	}
 	
-	public void cordsToLabel(List<List<SpatialPoint>> src, HashMap<List<String>, Integer> dst){
-		for(int i = 0; i < src.size(); i++){
-			List<String> temp = new ArrayList<String>();
-			for(int k = 0; k < src.get(i).size(); k++){
-				temp.add(src.get(i).get(k).getLabel());
-			}
-			//Collections.sort(temp);
-			if(dst.containsKey(temp))
-				dst.put(temp, dst.get(temp)+1);
-			else
-				dst.put(temp, 1);
-		}
-	}
-
 }
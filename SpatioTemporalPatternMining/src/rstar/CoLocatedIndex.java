@@ -0,0 +1,214 @@
+package rstar;
+
+import rstar.spatial.SpatialPoint;
+import util.LabelDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * collapses events at identical coordinates into one entry of the
+ * tree. The tree holds one point per distinct location; the events
+ * at that location are kept in a posting list of (oid, time, label)
+ * in primitive arrays. The posting lists live in memory next to the
+ * tree, so an index has to be rebuilt from the input after a restart.
+ */
+public class CoLocatedIndex {
+    private static final int NEIGHBOURHOOD_CACHE_SIZE = 256;
+
+    private RStarTree tree;
+    private HashMap<Location, Group> groups;
+    private LabelDictionary labels;
+    private long size;
+    private LinkedHashMap<Location, List<SpatialPoint>> neighbourhoods;
+    private double cachedRange = Double.NaN;
+
+    public CoLocatedIndex(RStarTree tree) {
+        this.tree = tree;
+        this.groups = new HashMap<Location, Group>();
+        this.labels = new LabelDictionary();
+        this.neighbourhoods = new LinkedHashMap<Location, List<SpatialPoint>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Location, List<SpatialPoint>> eldest) {
+                return size() > NEIGHBOURHOOD_CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * adds a point to the posting list of its location. Only the
+     * first point at a location is inserted in the tree.
+     * @return 1 if successful, else -1
+     */
+    public int insert(SpatialPoint point) {
+        Location location = new Location(point.getCords());
+        Group group = groups.get(location);
+        if (group == null) {
+            int status = tree.insert(point);
+            if (status != 1)
+                return status;
+            group = new Group(point.getCords());
+            groups.put(location, group);
+        }
+        group.add(point.getOid(), point.getTime(), labels.intern(point.getLabel()));
+        size++;
+        neighbourhoods.clear();
+        return 1;
+    }
+
+    /**
+     * @return the groups of all locations in range of center, in
+     * the order the tree returns their locations
+     */
+    public List<Group> rangeSearchGroups(SpatialPoint center, double range) {
+        List<SpatialPoint> locations = tree.rangeSearch(center, range);
+        List<Group> result = new ArrayList<Group>(locations.size());
+        for (SpatialPoint location : locations) {
+            Group group = groups.get(new Location(location.getCords()));
+            if (group != null)
+                result.add(group);
+        }
+        return result;
+    }
+
+    /**
+     * returns all points in range of center; the points of a location
+     * are returned together, in insertion order. The neighbourhoods of
+     * recently searched locations are kept, so pivots at the same
+     * location share one search. Searches may run on several threads
+     * while no points are inserted.
+     * @return an unmodifiable list of the points found
+     */
+    public List<SpatialPoint> rangeSearch(SpatialPoint center, double range) {
+        Location location = new Location(center.getCords());
+        List<SpatialPoint> result;
+        synchronized (neighbourhoods) {
+            if (range != cachedRange) {
+                neighbourhoods.clear();
+                cachedRange = range;
+            }
+            result = neighbourhoods.get(location);
+        }
+        if (result == null) {
+            List<SpatialPoint> points = new ArrayList<SpatialPoint>();
+            for (Group group : rangeSearchGroups(center, range)) {
+                for (int i = 0; i < group.size(); i++) {
+                    points.add(group.get(i));
+                }
+            }
+            result = Collections.unmodifiableList(points);
+            synchronized (neighbourhoods) {
+                if (range == cachedRange)
+                    neighbourhoods.put(location, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of distinct locations
+     */
+    public int locationCount() {
+        return groups.size();
+    }
+
+    /**
+     * @return number of points inserted
+     */
+    public long size() {
+        return size;
+    }
+
+    public void clear() {
+        tree.clear();
+        groups.clear();
+        labels.clear();
+        neighbourhoods.clear();
+        size = 0;
+    }
+
+    /**
+     * the events at one location
+     */
+    public class Group {
+        private final float[] cords;
+        private float[] oids;
+        private long[] times;
+        private int[] labelIds;
+        private int size;
+
+        Group(float[] cords) {
+            this.cords = cords;
+            this.oids = new float[1];
+            this.times = new long[1];
+            this.labelIds = new int[1];
+        }
+
+        void add(float oid, long time, int labelId) {
+            if (size == oids.length) {
+                oids = Arrays.copyOf(oids, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+                labelIds = Arrays.copyOf(labelIds, size * 2);
+            }
+            oids[size] = oid;
+            times[size] = time;
+            labelIds[size] = labelId;
+            size++;
+        }
+
+        public float[] getCords() {
+            return cords;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public float getOid(int i) {
+            return oids[i];
+        }
+
+        public long getTime(int i) {
+            return times[i];
+        }
+
+        public String getLabel(int i) {
+            return labels.get(labelIds[i]);
+        }
+
+        /**
+         * @return the i-th event of this location as a point
+         */
+        public SpatialPoint get(int i) {
+            return new SpatialPoint(cords, oids[i], getLabel(i), times[i]);
+        }
+    }
+
+    /**
+     * coordinates compared by value, for use as a hash key
+     */
+    private static class Location {
+        private final float[] cords;
+        private final int hash;
+
+        Location(float[] cords) {
+            this.cords = cords;
+            this.hash = Arrays.hashCode(cords);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Location && Arrays.equals(cords, ((Location) other).cords);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
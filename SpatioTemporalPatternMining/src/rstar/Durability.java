@@ -0,0 +1,20 @@
+package rstar;
+
+/**
+ * how much of the work on a disk tree survives a crash
+ */
+public enum Durability {
+    /** node files are written in place, a crash can leave a broken tree */
+    NONE,
+    /** writes are journaled and synced once per group of operations */
+    BATCH,
+    /** writes are journaled and synced after every operation */
+    SYNC;
+
+    /**
+     * @param name case insensitive name of the level, e.g. "batch"
+     */
+    public static Durability fromName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,116 @@
+package rstar;
+
+import rstar.spatial.SpatialPoint;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * builds trees with different fanouts on a sample of the
+ * data, measures the cost of inserts and range queries and
+ * recommends the fanout with the lowest combined cost.
+ */
+public class FanoutCalibrator {
+    private int dimension;
+    private double range;
+    private File workDirectory;
+    private List<Result> results;
+
+    /**
+     * @param dimension dimension of the sample points
+     * @param range radius of the range queries issued
+     *              while measuring
+     * @param workDirectory every calibration tree is built in
+     *                      its own sub directory of this one
+     */
+    public FanoutCalibrator(int dimension, double range, File workDirectory) {
+        this.dimension = dimension;
+        this.range = range;
+        this.workDirectory = workDirectory;
+        this.results = new ArrayList<Result>();
+    }
+
+    /**
+     * builds one tree per fanout from the sample and then
+     * runs one range query around every sample point. Each
+     * tree starts empty and is closed when it is measured.
+     * @param sample the points to be inserted
+     * @param fanouts the maximum node capacities to try
+     * @return the recommended fanout
+     */
+    public int calibrate(List<SpatialPoint> sample, int[] fanouts) {
+        results.clear();
+        for (int fanout : fanouts) {
+            RStarTree tree = new RStarTree(new TreeConfig(dimension, fanout, new File(workDirectory, "M" + fanout)));
+            try {
+                // a tree left by an earlier calibration would be reopened
+                tree.clear();
+
+                long start = System.nanoTime();
+                for (SpatialPoint point : sample) {
+                    tree.insert(point);
+                }
+                long insertNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (SpatialPoint point : sample) {
+                    tree.rangeSearch(point, range);
+                }
+                long queryNanos = System.nanoTime() - start;
+
+                results.add(new Result(fanout, tree.height(), insertNanos, queryNanos, sample.size()));
+            } finally {
+                tree.close();
+            }
+        }
+        return recommendedFanout();
+    }
+
+    /**
+     * @return the fanout with the lowest insert plus query cost,
+     * -1 if nothing was calibrated yet
+     */
+    public int recommendedFanout() {
+        Result best = null;
+        for (Result result : results) {
+            if (best == null || result.totalNanos() < best.totalNanos())
+                best = result;
+        }
+        return best == null ? -1 : best.fanout;
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * measurements for a single fanout
+     */
+    public static class Result {
+        public final int fanout;
+        public final int height;
+        public final long insertNanos;
+        public final long queryNanos;
+        private final int ops;
+
+        public Result(int fanout, int height, long insertNanos, long queryNanos, int ops) {
+            this.fanout = fanout;
+            this.height = height;
+            this.insertNanos = insertNanos;
+            this.queryNanos = queryNanos;
+            this.ops = ops;
+        }
+
+        public long totalNanos() {
+            return insertNanos + queryNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "M = " + fanout + ", height = " + height +
+                    ", avg insert(ms) = " + (insertNanos / 1e6) / Math.max(1, ops) +
+                    ", avg range search(ms) = " + (queryNanos / 1e6) / Math.max(1, ops);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package rstar;
+
+import rstar.dto.PointDTO;
+import rstar.dto.TreeDTO;
+import rstar.interfaces.IDiskQuery;
+import rstar.nodes.RStarLeaf;
+import rstar.nodes.RStarNode;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * keeps the live node objects and points of a tree on the java
+ * heap, without any serialization. Saving a node just records the
+ * object, loading returns that same object. Meant for benchmarks
+ * and data sets that fit in memory.
+ */
+public class HeapStorage implements IDiskQuery {
+    private TreeContext context;
+    private ConcurrentHashMap<Long, RStarNode> nodes;
+    private ArrayList<PointDTO> points;
+    private TreeDTO tree;
+
+    public HeapStorage(TreeContext context) {
+        this.context = context;
+        this.nodes = new ConcurrentHashMap<Long, RStarNode>();
+        this.points = new ArrayList<PointDTO>();
+    }
+
+    @Override
+    public void saveNode(RStarNode node) {
+        if (node.isLeaf()) {
+            RStarLeaf leaf = (RStarLeaf) node;
+            if (leaf.hasUnsavedPoints()) {
+                for (int i = leaf.loadedChildren.size() - 1; i >= 0; i--) {
+                    leaf.childPointers.add(savePoint(leaf.loadedChildren.remove(i).toDTO()));
+                }
+            }
+        }
+        nodes.put(node.getNodeId(), node);
+    }
+
+    @Override
+    public RStarNode loadNode(long nodeId) throws FileNotFoundException {
+        RStarNode node = nodes.get(nodeId);
+        if (node == null)
+            throw new FileNotFoundException("Node " + nodeId + " does not exist");
+        return node;
+    }
+
+    @Override
+    public void deleteNode(long nodeId) {
+        if (nodes.remove(nodeId) != null) {
+            context.getAllocator().release(nodeId);
+        }
+    }
+
+    @Override
+    public synchronized long savePoint(PointDTO pointDTO) {
+        points.add(pointDTO);
+        return points.size() - 1;
+    }
+
+    @Override
+    public PointDTO loadPoint(long pointer) {
+        if (pointer < 0 || pointer >= points.size()) {
+            System.err.println("Exception occurred while loading point " + pointer + " from memory.");
+            return null;
+        }
+        return points.get((int) pointer);
+    }
+
+    /**
+     * the tree metadata is only kept in memory
+     */
+    @Override
+    public int saveTree(TreeDTO tree, File saveFile) {
+        this.tree = tree;
+        return 1;
+    }
+
+    @Override
+    public TreeDTO loadTree(File saveFile) {
+        return tree;
+    }
+
+    /**
+     * nothing to make durable, the store does not survive the process
+     */
+    @Override
+    public void commit(TreeDTO tree) {
+    }
+
+    @Override
+    public void setDurability(Durability durability, int groupSize, long groupInterval) {
+    }
+
+    @Override
+    public synchronized void clear() {
+        nodes.clear();
+        points.clear();
+        context.getAllocator().reset();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public IDiskQuery createCompactionTarget() {
+        return new HeapStorage(context);
+    }
+
+    @Override
+    public synchronized void commitCompaction(IDiskQuery target, TreeDTO tree) {
+        HeapStorage compacted = (HeapStorage) target;
+        nodes = compacted.nodes;
+        points = compacted.points;
+        this.tree = tree;
+    }
+}
@@ -0,0 +1,261 @@
+package rstar;
+
+import rstar.dto.AllocatorDTO;
+import rstar.dto.TreeDTO;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * write-ahead log of a disk tree. Node images, points and node
+ * deletions are appended as checksummed records; a commit record
+ * closes the writes of one tree operation and carries the tree
+ * metadata after it. Commits are synced in groups, so the cost of
+ * a sync is shared by many inserts. On replay only operations
+ * whose commit record is intact are applied.
+ */
+public class Journal {
+    static final byte NODE = 1;
+    static final byte POINT = 2;
+    static final byte DELETE = 3;
+    static final byte COMMIT = 4;
+    /** the image of a deleted node, compared by reference */
+    static final byte[] DELETED = new byte[0];
+
+    // type, key and length
+    private static final int RECORD_HEADER = 1 + 8 + 4;
+
+    private File file;
+    private FileOutputStream fileOutput;
+    private DataOutputStream output;
+    private CRC32 checksum;
+    private long size;
+
+    private Durability durability;
+    private int groupSize;
+    private long groupInterval;
+    private int unsyncedCommits;
+    private long lastSync;
+
+    /**
+     * opens the journal for appending, nothing is replayed
+     * @param file the journal file, created if missing
+     */
+    public Journal(File file) throws IOException {
+        this.file = file;
+        this.checksum = new CRC32();
+        this.durability = Durability.BATCH;
+        this.groupSize = 1;
+        this.fileOutput = new FileOutputStream(file, true);
+        this.output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+        this.size = file.length();
+        this.lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * @param durability BATCH or SYNC
+     * @param groupSize number of commits synced together in BATCH mode
+     * @param groupInterval max milliseconds a commit stays unsynced in BATCH mode
+     */
+    public void setDurability(Durability durability, int groupSize, long groupInterval) {
+        this.durability = durability;
+        this.groupSize = Math.max(1, groupSize);
+        this.groupInterval = groupInterval;
+    }
+
+    public void append(byte type, long key, byte[] data) throws IOException {
+        byte[] record = new byte[RECORD_HEADER + data.length];
+        record[0] = type;
+        putLong(record, 1, key);
+        putInt(record, 9, data.length);
+        System.arraycopy(data, 0, record, RECORD_HEADER, data.length);
+
+        checksum.reset();
+        checksum.update(record, 0, record.length);
+        output.write(record);
+        output.writeInt((int) checksum.getValue());
+        size += record.length + 4;
+    }
+
+    /**
+     * ends the current operation and syncs the journal if the
+     * group is full or has waited long enough
+     * @param tree metadata of the tree after the operation
+     */
+    public void commit(TreeDTO tree) throws IOException {
+        append(COMMIT, 0, encodeTree(tree));
+        unsyncedCommits++;
+        if (durability == Durability.SYNC || unsyncedCommits >= groupSize
+                || System.currentTimeMillis() - lastSync >= groupInterval) {
+            sync();
+        }
+    }
+
+    /**
+     * forces all appended records to disk
+     */
+    public void sync() throws IOException {
+        output.flush();
+        fileOutput.getChannel().force(false);
+        unsyncedCommits = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * @return bytes in the journal, including unsynced ones
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * empties the journal once everything in it is on disk elsewhere
+     */
+    public void truncate() throws IOException {
+        output.flush();
+        fileOutput.getChannel().truncate(0);
+        fileOutput.getChannel().force(false);
+        size = 0;
+        unsyncedCommits = 0;
+    }
+
+    public void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * reads the committed operations of a journal. Reading stops at
+     * the first record that is torn or fails its checksum; records
+     * after the last intact commit are ignored.
+     * @param file the journal file
+     * @return the recovered state, null if nothing was committed
+     */
+    public static Recovery replay(File file) throws IOException {
+        if (!file.exists() || file.length() == 0)
+            return null;
+
+        Recovery recovery = new Recovery();
+        Map<Long, byte[]> nodes = new LinkedHashMap<Long, byte[]>();
+        List<Long> pointOffsets = new ArrayList<Long>();
+        List<byte[]> points = new ArrayList<byte[]>();
+        CRC32 checksum = new CRC32();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            byte[] header = new byte[RECORD_HEADER];
+            while (true) {
+                in.readFully(header);
+                int length = getInt(header, 9);
+                if (length < 0 || length > file.length())
+                    break;
+                byte[] data = new byte[length];
+                in.readFully(data);
+
+                checksum.reset();
+                checksum.update(header, 0, header.length);
+                checksum.update(data, 0, data.length);
+                if (in.readInt() != (int) checksum.getValue())
+                    break;
+
+                long key = getLong(header, 1);
+                switch (header[0]) {
+                    case NODE:
+                        nodes.put(key, data);
+                        break;
+                    case DELETE:
+                        nodes.put(key, DELETED);
+                        break;
+                    case POINT:
+                        pointOffsets.add(key);
+                        points.add(data);
+                        break;
+                    case COMMIT:
+                        recovery.nodes.putAll(nodes);
+                        recovery.pointOffsets.addAll(pointOffsets);
+                        recovery.points.addAll(points);
+                        recovery.tree = decodeTree(data);
+                        nodes.clear();
+                        pointOffsets.clear();
+                        points.clear();
+                        break;
+                    default:
+                        throw new EOFException("Unknown record type " + header[0]);
+                }
+            }
+        } catch (EOFException e) {
+            // torn tail
+        } finally {
+            in.close();
+        }
+        return recovery.tree == null ? null : recovery;
+    }
+
+    /**
+     * committed writes found in a journal
+     */
+    public static class Recovery {
+        /** encoded node images by node id, null for deleted nodes */
+        public final Map<Long, byte[]> nodes = new LinkedHashMap<Long, byte[]>();
+        public final List<Long> pointOffsets = new ArrayList<Long>();
+        public final List<byte[]> points = new ArrayList<byte[]>();
+        /** tree metadata of the last commit */
+        public TreeDTO tree;
+    }
+
+    private static byte[] encodeTree(TreeDTO tree) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(tree.dimension);
+        out.writeInt(tree.pagesize);
+        out.writeLong(tree.rootPointer);
+        out.writeInt(tree.maxChildren);
+        out.writeInt(tree.minChildren);
+        out.writeLong(tree.allocator.nextId);
+        out.writeInt(tree.allocator.freeIds.length);
+        for (long id : tree.allocator.freeIds) {
+            out.writeLong(id);
+        }
+        out.close();
+        return bos.toByteArray();
+    }
+
+    private static TreeDTO decodeTree(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int dimension = in.readInt();
+        int pagesize = in.readInt();
+        long rootPointer = in.readLong();
+        int maxChildren = in.readInt();
+        int minChildren = in.readInt();
+        long nextId = in.readLong();
+        long[] freeIds = new long[in.readInt()];
+        for (int i = 0; i < freeIds.length; i++) {
+            freeIds[i] = in.readLong();
+        }
+        return new TreeDTO(dimension, pagesize, rootPointer, maxChildren, minChildren,
+                new AllocatorDTO(nextId, freeIds));
+    }
+
+    private static void putLong(byte[] b, int off, long v) {
+        putInt(b, off, (int) (v >>> 32));
+        putInt(b, off + 4, (int) v);
+    }
+
+    private static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    private static long getLong(byte[] b, int off) {
+        return ((long) getInt(b, off) << 32) | (getInt(b, off + 4) & 0xFFFFFFFFL);
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xFF) << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+    }
+}
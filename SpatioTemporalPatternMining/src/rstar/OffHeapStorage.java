@@ -0,0 +1,301 @@
+package rstar;
+
+import rstar.dto.MbrDTO;
+import rstar.dto.NodeDTO;
+import rstar.dto.PointDTO;
+import rstar.dto.TreeDTO;
+import rstar.interfaces.IDiskQuery;
+import rstar.nodes.RStarInternal;
+import rstar.nodes.RStarLeaf;
+import rstar.nodes.RStarNode;
+import util.Constants;
+import util.LabelDictionary;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * keeps nodes and points of a tree in memory, but outside the java
+ * heap. Both are stored as fixed-stride records in direct buffers:
+ * a node lives at slot nodeId of the node arena, a point at the slot
+ * returned by savePoint. Labels are kept in a dictionary and stored
+ * as ids. Node objects only exist while the tree works on them, so
+ * heap usage does not grow with the number of points.
+ */
+public class OffHeapStorage implements IDiskQuery {
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final byte FREE = 0;
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+
+    // node record: state, child count, parent id, mbr, child ids
+    private static final int NODE_STATE = 0;
+    private static final int NODE_COUNT = 4;
+    private static final int NODE_PARENT = 8;
+    private static final int NODE_MBR = 16;
+
+    // point record: oid, label id, time, coordinates
+    private static final int POINT_OID = 0;
+    private static final int POINT_LABEL = 4;
+    private static final int POINT_TIME = 8;
+    private static final int POINT_CORDS = 16;
+
+    private TreeContext context;
+    private int dimension;
+    private int maxChildren;
+    private int nodeChildren;
+    private Arena nodes;
+    private Arena points;
+    private long pointCount;
+    private LabelDictionary labels;
+    private TreeDTO tree;
+
+    public OffHeapStorage(TreeContext context) {
+        this.context = context;
+        this.dimension = context.getDimension();
+        this.maxChildren = context.getMaxChildren();
+        this.nodeChildren = NODE_MBR + 2 * dimension * Constants.FLOAT_SIZE;
+        this.nodes = new Arena(nodeChildren + maxChildren * 4);
+        this.points = new Arena(POINT_CORDS + dimension * Constants.FLOAT_SIZE);
+        this.labels = new LabelDictionary();
+        this.pointCount = 0;
+    }
+
+    @Override
+    public void saveNode(RStarNode node) {
+        if (node.isLeaf()) {
+            RStarLeaf leaf = (RStarLeaf) node;
+            if (leaf.hasUnsavedPoints()) {
+                //save unsaved points first.
+                for (int i = leaf.loadedChildren.size() - 1; i >= 0; i--) {
+                    leaf.childPointers.add(savePoint(leaf.loadedChildren.remove(i).toDTO()));
+                }
+            }
+        }
+
+        long nodeId = node.getNodeId();
+        ArrayList<Long> children = node.childPointers;
+        if (children.size() > maxChildren)
+            throw new IllegalStateException("Node " + nodeId + " has more than " + maxChildren + " children");
+
+        nodes.ensure(nodeId);
+        ByteBuffer buffer = nodes.chunk(nodeId);
+        int offset = nodes.offset(nodeId);
+
+        buffer.put(offset + NODE_STATE, node.isLeaf() ? LEAF : INTERNAL);
+        buffer.putInt(offset + NODE_COUNT, children.size());
+        buffer.putLong(offset + NODE_PARENT, node.getParentId() == null ? -1 : node.getParentId());
+        putMbr(buffer, offset + NODE_MBR, node.getMBR().getPoints());
+        int pos = offset + nodeChildren;
+        for (Long child : children) {
+            buffer.putInt(pos, toSlot(child));
+            pos += 4;
+        }
+    }
+
+    @Override
+    public RStarNode loadNode(long nodeId) throws FileNotFoundException {
+        if (!nodes.contains(nodeId))
+            throw new FileNotFoundException("Node " + nodeId + " does not exist");
+
+        ByteBuffer buffer = nodes.chunk(nodeId);
+        int offset = nodes.offset(nodeId);
+        byte state = buffer.get(offset + NODE_STATE);
+        if (state == FREE)
+            throw new FileNotFoundException("Node " + nodeId + " does not exist");
+
+        int count = buffer.getInt(offset + NODE_COUNT);
+        ArrayList<Long> children = new ArrayList<Long>(count);
+        int pos = offset + nodeChildren;
+        for (int i = 0; i < count; i++) {
+            children.add((long) buffer.getInt(pos));
+            pos += 4;
+        }
+        NodeDTO dto = new NodeDTO(buffer.getLong(offset + NODE_PARENT), state == LEAF,
+                new MbrDTO(getMbr(buffer, offset + NODE_MBR)), children);
+
+        if (dto.isLeaf)
+            return new RStarLeaf(dto, nodeId, context);
+        else
+            return new RStarInternal(dto, nodeId, context);
+    }
+
+    @Override
+    public void deleteNode(long nodeId) {
+        if (nodes.contains(nodeId)) {
+            nodes.chunk(nodeId).put(nodes.offset(nodeId) + NODE_STATE, FREE);
+            context.getAllocator().release(nodeId);
+        }
+    }
+
+    @Override
+    public synchronized long savePoint(PointDTO pointDTO) {
+        long slot = pointCount++;
+        points.ensure(slot);
+        ByteBuffer buffer = points.chunk(slot);
+        int offset = points.offset(slot);
+
+        buffer.putFloat(offset + POINT_OID, pointDTO.oid);
+        buffer.putInt(offset + POINT_LABEL, labels.intern(pointDTO.label));
+        buffer.putLong(offset + POINT_TIME, pointDTO.time);
+        int pos = offset + POINT_CORDS;
+        for (int i = 0; i < dimension; i++) {
+            buffer.putFloat(pos, pointDTO.coords[i]);
+            pos += Constants.FLOAT_SIZE;
+        }
+        return slot;
+    }
+
+    @Override
+    public PointDTO loadPoint(long pointer) {
+        if (pointer < 0 || pointer >= pointCount) {
+            System.err.println("Exception occurred while loading point " + pointer + " from memory.");
+            return null;
+        }
+        ByteBuffer buffer = points.chunk(pointer);
+        int offset = points.offset(pointer);
+
+        float[] coords = new float[dimension];
+        int pos = offset + POINT_CORDS;
+        for (int i = 0; i < dimension; i++) {
+            coords[i] = buffer.getFloat(pos);
+            pos += Constants.FLOAT_SIZE;
+        }
+        return new PointDTO(buffer.getFloat(offset + POINT_OID), coords,
+                labels.get(buffer.getInt(offset + POINT_LABEL)), buffer.getLong(offset + POINT_TIME));
+    }
+
+    /**
+     * the tree metadata is only kept in memory
+     */
+    @Override
+    public int saveTree(TreeDTO tree, File saveFile) {
+        this.tree = tree;
+        return 1;
+    }
+
+    @Override
+    public TreeDTO loadTree(File saveFile) {
+        return tree;
+    }
+
+    /**
+     * nothing to make durable, the store does not survive the process
+     */
+    @Override
+    public void commit(TreeDTO tree) {
+    }
+
+    @Override
+    public void setDurability(Durability durability, int groupSize, long groupInterval) {
+    }
+
+    @Override
+    public synchronized void clear() {
+        nodes = new Arena(nodes.stride);
+        points = new Arena(points.stride);
+        pointCount = 0;
+        labels.clear();
+        context.getAllocator().reset();
+    }
+
+    @Override
+    public void close() {
+        nodes = new Arena(nodes.stride);
+        points = new Arena(points.stride);
+    }
+
+    @Override
+    public IDiskQuery createCompactionTarget() {
+        return new OffHeapStorage(context);
+    }
+
+    @Override
+    public synchronized void commitCompaction(IDiskQuery target, TreeDTO tree) {
+        OffHeapStorage compacted = (OffHeapStorage) target;
+        nodes = compacted.nodes;
+        points = compacted.points;
+        pointCount = compacted.pointCount;
+        labels = compacted.labels;
+        this.tree = tree;
+    }
+
+    /**
+     * @return bytes of off-heap memory held by nodes and points
+     */
+    public long allocatedBytes() {
+        return nodes.allocatedBytes() + points.allocatedBytes();
+    }
+
+    private void putMbr(ByteBuffer buffer, int offset, float[][] mbr) {
+        for (int i = 0; i < dimension; i++) {
+            buffer.putFloat(offset, mbr[i][0]);
+            buffer.putFloat(offset + Constants.FLOAT_SIZE, mbr[i][1]);
+            offset += 2 * Constants.FLOAT_SIZE;
+        }
+    }
+
+    private float[][] getMbr(ByteBuffer buffer, int offset) {
+        float[][] mbr = new float[dimension][2];
+        for (int i = 0; i < dimension; i++) {
+            mbr[i][0] = buffer.getFloat(offset);
+            mbr[i][1] = buffer.getFloat(offset + Constants.FLOAT_SIZE);
+            offset += 2 * Constants.FLOAT_SIZE;
+        }
+        return mbr;
+    }
+
+    private static int toSlot(long id) {
+        if (id < 0 || id > Integer.MAX_VALUE)
+            throw new IllegalStateException("Id " + id + " does not fit an int slot");
+        return (int) id;
+    }
+
+    /**
+     * fixed-stride records in a growing list of direct buffers.
+     * Reads use absolute positions only, so concurrent readers
+     * do not interfere with each other.
+     */
+    private static class Arena {
+        private final int stride;
+        private final int recordsPerChunk;
+        private volatile ByteBuffer[] chunks;
+
+        Arena(int stride) {
+            this.stride = stride;
+            this.recordsPerChunk = Math.max(1, CHUNK_SIZE / stride);
+            this.chunks = new ByteBuffer[0];
+        }
+
+        synchronized void ensure(long slot) {
+            int needed = (int) (slot / recordsPerChunk) + 1;
+            if (needed > chunks.length) {
+                ByteBuffer[] grown = new ByteBuffer[needed];
+                System.arraycopy(chunks, 0, grown, 0, chunks.length);
+                for (int i = chunks.length; i < needed; i++) {
+                    grown[i] = ByteBuffer.allocateDirect(recordsPerChunk * stride);
+                }
+                chunks = grown;
+            }
+        }
+
+        boolean contains(long slot) {
+            return slot >= 0 && slot / recordsPerChunk < chunks.length;
+        }
+
+        ByteBuffer chunk(long slot) {
+            return chunks[(int) (slot / recordsPerChunk)];
+        }
+
+        int offset(long slot) {
+            return (int) (slot % recordsPerChunk) * stride;
+        }
+
+        long allocatedBytes() {
+            return (long) chunks.length * recordsPerChunk * stride;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package rstar;
+
+import rstar.dto.AllocatorDTO;
+import rstar.interfaces.IDtoConvertible;
+
+import java.util.TreeSet;
+
+/**
+ * hands out node ids (pages) of a tree. Ids released by
+ * deleted nodes are kept in a free list and handed out
+ * again, lowest first, before new ids are used. The
+ * allocator state is saved with the tree metadata.
+ *
+ * The tree itself never drops a node: a split keeps the id
+ * of the split node and takes one new id, and points are
+ * only ever added. So every id handed out belongs to a live
+ * node, and release is only reached through a store's
+ * deleteNode. Space is given back by RStarTree.compact,
+ * which rewrites the live nodes and points into a fresh
+ * store with dense ids and resets the allocator.
+ */
+public class PageAllocator implements IDtoConvertible {
+    private long nextId;
+    private TreeSet<Long> freeIds;
+
+    public PageAllocator() {
+        this.nextId = 1;
+        this.freeIds = new TreeSet<Long>();
+    }
+
+    public synchronized long allocate() {
+        if (!freeIds.isEmpty()) {
+            return freeIds.pollFirst();
+        }
+        return nextId++;
+    }
+
+    /**
+     * returns a page to the free list
+     * @param id id of a node that no longer exists
+     */
+    public synchronized void release(long id) {
+        if (id <= 0 || id >= nextId)
+            return;
+
+        if (id == nextId - 1) {
+            // shrink instead of remembering the tail
+            nextId--;
+            while (freeIds.remove(nextId - 1)) {
+                nextId--;
+            }
+        } else {
+            freeIds.add(id);
+        }
+    }
+
+    /**
+     * records that a page with this id exists on disk, so it
+     * is never handed out again. Used when opening a tree whose
+     * metadata may be older than its node files.
+     */
+    public synchronized void markUsed(long id) {
+        freeIds.remove(id);
+        if (id >= nextId) {
+            nextId = id + 1;
+        }
+    }
+
+    public synchronized void reset() {
+        nextId = 1;
+        freeIds.clear();
+    }
+
+    public synchronized void restore(AllocatorDTO dto) {
+        nextId = dto.nextId;
+        freeIds.clear();
+        for (long id : dto.freeIds) {
+            freeIds.add(id);
+        }
+    }
+
+    public synchronized int freeCount() {
+        return freeIds.size();
+    }
+
+    @Override
+    public synchronized AllocatorDTO toDTO() {
+        long[] free = new long[freeIds.size()];
+        int i = 0;
+        for (Long id : freeIds) {
+            free[i++] = id;
+        }
+        return new AllocatorDTO(nextId, free);
+    }
+}
@@ -0,0 +1,171 @@
+package rstar;
+
+import rstar.dto.MbrDTO;
+import rstar.dto.NodeDTO;
+import rstar.dto.PointDTO;
+import util.LabelDictionary;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+
+/**
+ * compact binary form of nodes and points. Child ids of a node are
+ * stored as varint deltas to the previous child, which is small
+ * after a compaction or for points appended in leaf order. The
+ * second bound of each dimension of a node's mbr is stored as the
+ * difference of its float bits to the first, which is small for the
+ * narrow mbrs of the lower levels and exact for any mbr. Times
+ * are zigzag varints and labels are ids of a label dictionary.
+ * Records written by java serialization start with STREAM_MAGIC,
+ * so the old format can still be recognised and read.
+ */
+public class PageCodec {
+    public static final int STREAM_MAGIC = 0xAC;
+
+    // nodes with both mbr bounds as raw floats, still read
+    private static final int NODE_MAGIC = 0x4E;
+    private static final int DELTA_NODE_MAGIC = 0x4D;
+    private static final int POINT_MAGIC = 0x50;
+
+    /**
+     * @return an upper bound of the encoded size of a point
+     */
+    public static int maxPointSize(int dimension) {
+        return 1 + 4 + 5 + 10 + 5 + 4 * dimension;
+    }
+
+    public static byte[] encodeNode(NodeDTO node) {
+        float[][] mbr = node.mbr.points;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + 8 * mbr.length + 3 * node.children.size());
+        out.write(DELTA_NODE_MAGIC);
+        out.write(node.isLeaf ? 1 : 0);
+        writeSigned(out, node.parentId);
+        writeVarint(out, mbr.length);
+        for (float[] range : mbr) {
+            int first = Float.floatToIntBits(range[0]);
+            writeFloat(out, range[0]);
+            // wraps around for bounds of different signs, and back on decoding
+            writeSigned(out, Float.floatToIntBits(range[1]) - first);
+        }
+        writeVarint(out, node.children.size());
+        long previous = 0;
+        for (Long child : node.children) {
+            writeSigned(out, child - previous);
+            previous = child;
+        }
+        return out.toByteArray();
+    }
+
+    public static NodeDTO decodeNode(byte[] data) {
+        Reader in = new Reader(data, 0);
+        int magic = in.readByte();
+        if (magic != DELTA_NODE_MAGIC && magic != NODE_MAGIC)
+            throw new IllegalArgumentException("Not an encoded node");
+
+        boolean leaf = in.readByte() == 1;
+        long parentId = in.readSigned();
+        float[][] mbr = new float[(int) in.readVarint()][2];
+        for (float[] range : mbr) {
+            range[0] = in.readFloat();
+            if (magic == DELTA_NODE_MAGIC)
+                range[1] = Float.intBitsToFloat(Float.floatToIntBits(range[0]) + (int) in.readSigned());
+            else
+                range[1] = in.readFloat();
+        }
+        int count = (int) in.readVarint();
+        ArrayList<Long> children = new ArrayList<Long>(count);
+        long child = 0;
+        for (int i = 0; i < count; i++) {
+            child += in.readSigned();
+            children.add(child);
+        }
+        return new NodeDTO(parentId, leaf, new MbrDTO(mbr), children);
+    }
+
+    /**
+     * @param labelId id of the point label in the dictionary of the store
+     */
+    public static byte[] encodePoint(PointDTO point, int labelId) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(maxPointSize(point.coords.length));
+        out.write(POINT_MAGIC);
+        writeFloat(out, point.oid);
+        writeVarint(out, labelId - LabelDictionary.NO_LABEL);
+        writeSigned(out, point.time);
+        writeVarint(out, point.coords.length);
+        for (float coord : point.coords) {
+            writeFloat(out, coord);
+        }
+        return out.toByteArray();
+    }
+
+    public static PointDTO decodePoint(byte[] data, int offset, LabelDictionary labels) {
+        Reader in = new Reader(data, offset);
+        if (in.readByte() != POINT_MAGIC)
+            throw new IllegalArgumentException("Not an encoded point");
+
+        float oid = in.readFloat();
+        String label = labels.get((int) in.readVarint() + LabelDictionary.NO_LABEL);
+        long time = in.readSigned();
+        float[] coords = new float[(int) in.readVarint()];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = in.readFloat();
+        }
+        return new PointDTO(oid, coords, label, time);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeSigned(ByteArrayOutputStream out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeFloat(ByteArrayOutputStream out, float value) {
+        int bits = Float.floatToIntBits(value);
+        out.write(bits >>> 24);
+        out.write(bits >>> 16);
+        out.write(bits >>> 8);
+        out.write(bits);
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private int pos;
+
+        Reader(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        int readByte() {
+            return data[pos++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        long readSigned() {
+            long raw = readVarint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        float readFloat() {
+            int bits = (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+            return Float.intBitsToFloat(bits);
+        }
+    }
+}
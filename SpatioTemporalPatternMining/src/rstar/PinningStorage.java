@@ -0,0 +1,184 @@
+package rstar;
+
+import rstar.dto.PointDTO;
+import rstar.dto.TreeDTO;
+import rstar.interfaces.IDiskQuery;
+import rstar.nodes.RStarNode;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * keeps the internal nodes of a tree resident as decoded objects in
+ * front of another store. Internal nodes are about 1/fanout of the
+ * tree, so with them pinned a search only reads leaves and points
+ * from the store below. Nodes are pinned as long as their estimated
+ * size fits the budget; beyond it the remaining internal nodes are
+ * read from the store as before.
+ */
+public class PinningStorage implements IDiskQuery {
+    // object, mbr and list overhead of a node, and the cost of one child
+    private static final int NODE_OVERHEAD = 160;
+    private static final int CHILD_SIZE = 24;
+
+    private IDiskQuery store;
+    private ConcurrentHashMap<Long, RStarNode> pinned;
+    private long budget;
+    private long nodeSize;
+
+    /**
+     * @param store the store nodes and points are kept in
+     * @param context context of the tree, used to size pinned nodes
+     */
+    public PinningStorage(IDiskQuery store, TreeContext context) {
+        this.store = store;
+        this.pinned = new ConcurrentHashMap<Long, RStarNode>();
+        this.budget = 0;
+        this.nodeSize = NODE_OVERHEAD + 8L * context.getDimension() + (long) CHILD_SIZE * context.getMaxChildren();
+    }
+
+    /**
+     * @param budget bytes the pinned nodes may take, 0 unpins all
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        if (budget <= 0) {
+            pinned.clear();
+        }
+        while (pinnedBytes() > budget) {
+            pinned.remove(pinned.keys().nextElement());
+        }
+    }
+
+    /**
+     * loads and pins the internal nodes breadth-first from the root,
+     * so the upper levels are pinned first if the budget runs out.
+     * Leaves are not loaded: all of them are on the last level, and
+     * the walk stops on the level above it.
+     * @param root   the root node
+     * @param height number of levels of the tree, leaves included
+     */
+    public void pinFrom(RStarNode root, int height) {
+        if (root.isLeaf())
+            return;
+        pin(root);
+        List<Long> level = new ArrayList<Long>(root.childPointers);
+        for (int depth = 2; depth < height && !level.isEmpty(); depth++) {
+            List<Long> next = new ArrayList<Long>();
+            for (Long nodeId : level) {
+                if (pinnedBytes() + nodeSize > budget)
+                    return;
+                try {
+                    RStarNode node = loadNode(nodeId);
+                    if (node != null && depth + 1 < height)
+                        next.addAll(node.childPointers);
+                } catch (FileNotFoundException e) {
+                    System.err.println("Exception while pinning node. message: " + e.getMessage());
+                }
+            }
+            level = next;
+        }
+    }
+
+    public int pinnedNodes() {
+        return pinned.size();
+    }
+
+    /**
+     * @return estimated heap bytes of the pinned nodes
+     */
+    public long pinnedBytes() {
+        return pinned.size() * nodeSize;
+    }
+
+    private synchronized void pin(RStarNode node) {
+        if (node.isLeaf())
+            return;
+        if (pinned.containsKey(node.getNodeId()) || pinnedBytes() + nodeSize <= budget) {
+            pinned.put(node.getNodeId(), node);
+        }
+    }
+
+    @Override
+    public void saveNode(RStarNode node) {
+        store.saveNode(node);
+        pin(node);
+    }
+
+    @Override
+    public RStarNode loadNode(long nodeId) throws FileNotFoundException {
+        RStarNode node = pinned.get(nodeId);
+        if (node == null) {
+            node = store.loadNode(nodeId);
+            if (node != null)
+                pin(node);
+        }
+        return node;
+    }
+
+    @Override
+    public void deleteNode(long nodeId) {
+        pinned.remove(nodeId);
+        store.deleteNode(nodeId);
+    }
+
+    @Override
+    public long savePoint(PointDTO pointDTO) {
+        return store.savePoint(pointDTO);
+    }
+
+    @Override
+    public PointDTO loadPoint(long pointer) {
+        return store.loadPoint(pointer);
+    }
+
+    @Override
+    public int saveTree(TreeDTO tree, File saveFile) {
+        return store.saveTree(tree, saveFile);
+    }
+
+    @Override
+    public TreeDTO loadTree(File saveFile) {
+        return store.loadTree(saveFile);
+    }
+
+    @Override
+    public void commit(TreeDTO tree) {
+        store.commit(tree);
+    }
+
+    @Override
+    public void setDurability(Durability durability, int groupSize, long groupInterval) {
+        store.setDurability(durability, groupSize, groupInterval);
+    }
+
+    @Override
+    public void clear() {
+        pinned.clear();
+        store.clear();
+    }
+
+    @Override
+    public void close() {
+        pinned.clear();
+        store.close();
+    }
+
+    @Override
+    public IDiskQuery createCompactionTarget() {
+        return store.createCompactionTarget();
+    }
+
+    /**
+     * node ids change with a compaction, so all nodes are unpinned;
+     * they are pinned again as they are loaded.
+     */
+    @Override
+    public void commitCompaction(IDiskQuery target, TreeDTO tree) {
+        pinned.clear();
+        store.commitCompaction(target, tree);
+    }
+}
@@ -1,7 +1,10 @@
 package rstar;
 
+import rstar.dto.AllocatorDTO;
+import rstar.dto.NodeDTO;
 import rstar.dto.PointDTO;
 import rstar.dto.TreeDTO;
+import rstar.interfaces.IDiskQuery;
 import rstar.interfaces.IDtoConvertible;
 import rstar.interfaces.ISpatialQuery;
 import rstar.nodes.RStarInternal;
@@ -14,41 +17,180 @@ import util.Constants;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class RStarTree implements ISpatialQuery, IDtoConvertible {
 
     private int dimension;
+    private TreeConfig config;
+    private TreeContext context;
     private File saveFile;
-    private StorageManager storage;
+    private IDiskQuery storage;
+    private PinningStorage pinning;
     private RStarNode root;
     private long rootPointer = -1;
     private RStarSplit splitManager;
+    private ReadAheadPool readAhead;
 
     private float _pointSearchResult = -1;
-    private ArrayList<SpatialPoint> _rangeSearchResult;
-    private List<SpatialPoint> _knnSearchResult;
     private int bestSortOrder = -1;
 
+    /**
+     * creates a tree in the working directory with the default
+     * node capacities, M = 10 and m = 4.
+     * @param dimension dimension of the indexed points
+     */
     public RStarTree(int dimension) {
-        this.dimension = dimension;
-        this.saveFile = new File(Constants.TREE_FILE);
-        this.storage = new StorageManager();
-        this.splitManager = new RStarSplit(dimension, storage);
+        this(new TreeConfig(dimension));
+    }
+
+    /**
+     * creates a tree in the working directory with a fixed fanout
+     * @param dimension dimension of the indexed points
+     * @param maxChildren maximum number of entries in a node (M)
+     */
+    public RStarTree(int dimension, int maxChildren) {
+        this(new TreeConfig(dimension, maxChildren, new File(".")));
+    }
+
+    /**
+     * creates a tree with its own configuration. Trees with
+     * different directories are independent of each other and
+     * can be used side by side in one process.
+     * @param config dimension, capacities and directory of the tree
+     */
+    public RStarTree(TreeConfig config) {
+        this(config, StorageMode.DISK);
+    }
+
+    /**
+     * creates a tree on a new storage of the given kind
+     * @param config dimension, capacities and directory of the tree
+     * @param mode the storage backend to keep nodes and points in
+     */
+    public RStarTree(TreeConfig config, StorageMode mode) {
+        this(new TreeContext(config), mode);
+    }
+
+    private RStarTree(TreeContext context, StorageMode mode) {
+        this(context, mode.create(context));
+    }
+
+    /**
+     * creates a tree on top of the given storage. The tree only
+     * talks to its storage through IDiskQuery.
+     * @param context the context the storage was created with
+     * @param storage where nodes and points of the tree are kept
+     */
+    public RStarTree(TreeContext context, IDiskQuery storage) {
+        this.config = context.getConfig();
+        this.context = context;
+        this.dimension = config.getDimension();
+        this.saveFile = config.getTreeFile();
+        this.pinning = new PinningStorage(storage, context);
+        this.storage = pinning;
+        this.splitManager = new RStarSplit(context, this.storage);
+
+        loadTree();
+    }
+
+    /**
+     * keeps the internal nodes resident in memory, so searches and
+     * inserts only read leaves and points from the storage. Upper
+     * levels are pinned first; internal nodes beyond the budget are
+     * read from the storage as before.
+     * @param budget bytes the pinned nodes may take, 0 to unpin all
+     */
+    public void setPinnedMemory(long budget) {
+        pinning.setBudget(budget);
+        if (budget > 0) {
+            loadRoot();
+            pinning.pinFrom(root, height());
+        }
+    }
+
+    /**
+     * @return number of internal nodes held in memory
+     */
+    public int pinnedNodes() {
+        return pinning.pinnedNodes();
+    }
+
+    /**
+     * @return estimated bytes taken by the pinned nodes
+     */
+    public long pinnedBytes() {
+        return pinning.pinnedBytes();
+    }
+
+    /**
+     * lets range searches load the children of a node
+     * concurrently with the given number of I/O threads
+     * @param threads number of I/O threads, 0 to read synchronously
+     */
+    public void setReadAhead(int threads) {
+        if (readAhead != null) {
+            readAhead.shutdown();
+            readAhead = null;
+        }
+        if (threads > 0) {
+            readAhead = new ReadAheadPool(storage, threads);
+        }
+    }
+
+    /**
+     * sets how inserts survive a crash. BATCH and SYNC journal the
+     * writes of every insert, so a crashed tree reopens with all
+     * inserts up to the last synced one.
+     * @param durability NONE, BATCH or SYNC
+     */
+    public void setDurability(Durability durability) {
+        setDurability(durability, Constants.JOURNAL_GROUP_SIZE, Constants.JOURNAL_GROUP_INTERVAL);
+    }
+
+    /**
+     * @param durability NONE, BATCH or SYNC
+     * @param groupSize number of inserts synced together in BATCH mode
+     * @param groupInterval max milliseconds an insert waits for its sync in BATCH mode
+     */
+    public void setDurability(Durability durability, int groupSize, long groupInterval) {
+        storage.setDurability(durability, groupSize, groupInterval);
+    }
 
-        storage.createDataDir(saveFile);
-        setCapacities();
+    public TreeConfig getConfig() {
+        return config;
     }
 
-    private void setCapacities(){
-        Constants.DIMENSION = dimension;
-//        Constants.MAX_CHILDREN = Constants.PAGESIZE/8;          // M = (pagesize - mbr_size)/ (size of Long = 8)
-//        Constants.MIN_CHILDREN = Constants.MAX_CHILDREN/3;      // m = M/3
-        Constants.MAX_CHILDREN = 10;
-        Constants.MIN_CHILDREN = 4;
+    public int getMaxChildren() {
+        return config.getMaxChildren();
+    }
+
+    public int getMinChildren() {
+        return config.getMinChildren();
+    }
+
+    /**
+     * computes the height of the tree by walking
+     * down its leftmost path.
+     * @return number of levels, 1 for a tree that is a single leaf
+     */
+    public int height() {
+        loadRoot();
+        int height = 1;
+        RStarNode node = root;
+        while (!node.isLeaf()) {
+            node = loadNode(node.childPointers.get(0));
+            height++;
+        }
+        return height;
     }
 
     /* QUERY FUNCTIONS */
@@ -61,8 +203,10 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
     @Override
     public int insert(SpatialPoint point) {
         System.out.println("inserting point with oid=" + point.getOid());
-        RStarLeaf target = chooseLeaf(point);
+        List<RStarNode> path = new ArrayList<RStarNode>();
+        RStarLeaf target = chooseLeaf(point, path);
 
+        int status;
         if (target.isNotFull()) {
             target.insert(point);
             storage.saveNode(target);
@@ -70,11 +214,13 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
             if (target.getNodeId() == rootPointer) {
                 root = target;
             }
-            adjustParentOf(target);
-            return 1;
+            adjustParentOf(target, path, path.size() - 1);
+            status = 1;
         } else {
-            return treatLeafOverflow(target, point);
+            status = treatLeafOverflow(target, point, path);
         }
+        storage.commit(toDTO());
+        return status;
     }
 
     /**
@@ -82,11 +228,13 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
      * @param nodePointer pointer to node in which the given node
      *                    is to be inserted
      * @param nodeToInsert the node to be inserted
+     * @param path root-to-leaf path loaded by chooseLeaf
+     * @param level position of the target node in path
      * @return 1 of successful, else -1
      */
-    private int insertAt(Long nodePointer, RStarNode nodeToInsert) {
+    private int insertAt(Long nodePointer, RStarNode nodeToInsert, List<RStarNode> path, int level) {
         storage.saveNode(nodeToInsert);
-        RStarInternal target = (RStarInternal) loadNode(nodePointer);
+        RStarInternal target = (RStarInternal) nodeOnPath(nodePointer, path, level);
 
         if (target.isNotFull()) {
             target.insert(nodeToInsert);
@@ -96,10 +244,10 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
             }
 
             storage.saveNode(target);
-            adjustParentOf(target);
+            adjustParentOf(target, path, level);
             return 1;
         } else {
-            return treatInternalOverflow(target, nodeToInsert);
+            return treatInternalOverflow(target, nodeToInsert, path, level);
         }
     }
 
@@ -160,7 +308,9 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
     }
 
     /**
-     * searches for points in the given range of the center point
+     * searches for points in the given range of the center point.
+     * Range searches may run on several threads at once while the
+     * tree is not modified.
      * @param center center point of the search region.
      * @param range radius of the search region.
      * @return List of all the points found in the range
@@ -177,30 +327,29 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
         HyperRectangle searchRegion = new HyperRectangle(dimension);
         searchRegion.setPoints(mbrPoints);
 
-        _rangeSearchResult = new ArrayList<SpatialPoint>();
+        List<SpatialPoint> result = new ArrayList<SpatialPoint>();
         loadRoot();
-        _rangeSearch(root, searchRegion);
-        return _rangeSearchResult;
+        _rangeSearch(root, searchRegion, result);
+        return result;
     }
 
-    private void _rangeSearch(RStarNode start, HyperRectangle searchRegion) {
+    private void _rangeSearch(RStarNode start, HyperRectangle searchRegion, List<SpatialPoint> result) {
         HyperRectangle intersection = start.getMBR().getIntersection(searchRegion);
         if (intersection != null) {
-            if (start.isLeaf()) {
+            if (readAhead != null) {
+                _rangeSearchReadAhead(start, searchRegion, result);
+            }
+            else if (start.isLeaf()) {
                 for (Long pointer : start.childPointers) {
                     PointDTO dto = storage.loadPoint(pointer);
-                    SpatialPoint spoint = new SpatialPoint(dto);
-                    HyperRectangle pointMbr = new HyperRectangle(dto.coords);
-
-                    if(pointMbr.getIntersection(searchRegion) != null)
-                        _rangeSearchResult.add(spoint);
+                    addIfInRegion(dto, searchRegion, result);
                 }
             }
             else {
                 for (Long pointer : start.childPointers) {
                     try {
                         RStarNode childNode = storage.loadNode(pointer);    //recurse down
-                        _rangeSearch(childNode, searchRegion);
+                        _rangeSearch(childNode, searchRegion, result);
 
                     } catch (FileNotFoundException e) {
                         System.err.println("Exception while loading node from disk");
@@ -210,6 +359,53 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
         }
     }
 
+    /**
+     * issues the reads of all children of start at once and then
+     * visits them in order as they arrive, so the result is the
+     * same as without read-ahead.
+     */
+    private void _rangeSearchReadAhead(RStarNode start, HyperRectangle searchRegion, List<SpatialPoint> result) {
+        if (start.isLeaf()) {
+            List<Future<PointDTO>> pending = new ArrayList<Future<PointDTO>>(start.childPointers.size());
+            for (Long pointer : start.childPointers) {
+                pending.add(readAhead.loadPoint(pointer));
+            }
+            for (Future<PointDTO> read : pending) {
+                try {
+                    addIfInRegion(read.get(), searchRegion, result);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    System.err.println("Exception occurred while loading point from disk.");
+                }
+            }
+        } else {
+            List<Future<RStarNode>> pending = new ArrayList<Future<RStarNode>>(start.childPointers.size());
+            for (Long pointer : start.childPointers) {
+                pending.add(readAhead.loadNode(pointer));
+            }
+            for (Future<RStarNode> read : pending) {
+                try {
+                    _rangeSearch(read.get(), searchRegion, result);     //recurse down
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    System.err.println("Exception while loading node from disk");
+                }
+            }
+        }
+    }
+
+    private void addIfInRegion(PointDTO dto, HyperRectangle searchRegion, List<SpatialPoint> result) {
+        SpatialPoint spoint = new SpatialPoint(dto);
+        HyperRectangle pointMbr = new HyperRectangle(dto.coords);
+
+        if(pointMbr.getIntersection(searchRegion) != null)
+            result.add(spoint);
+    }
+
     /**
      * searches for the k nearest neighbours of a center point
      * @param center SpatialPoint
@@ -219,13 +415,11 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
     @Override
     public List<SpatialPoint> knnSearch(SpatialPoint center, int k) {
         loadRoot();
-        _knnSearch(root, center, k, 1);
-        _rangeSearchResult = new ArrayList<SpatialPoint>();
-        return _knnSearchResult;
+        return _knnSearch(root, center, k, 1);
     }
 
-    private void _knnSearch(RStarNode start, SpatialPoint center, int k, float range) {
-        _rangeSearchResult = new ArrayList<SpatialPoint>();
+    private List<SpatialPoint> _knnSearch(RStarNode start, SpatialPoint center, int k, float range) {
+        List<SpatialPoint> result = new ArrayList<SpatialPoint>();
 
         float[] points = center.getCords();
         float[][] mbrPoints = new float[dimension][2];
@@ -236,10 +430,10 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
         HyperRectangle searchRegion = new HyperRectangle(dimension);
         searchRegion.setPoints(mbrPoints);
 
-        _rangeSearch(start, searchRegion);
+        _rangeSearch(start, searchRegion, result);
 
-        if (_rangeSearchResult.size() < k) {
-            _knnSearch(start, center, k, 2 * range);
+        if (result.size() < k) {
+            return _knnSearch(start, center, k, 2 * range);
         } else {
             final SpatialPoint fcenter = center;
             Comparator<? super SpatialPoint> paramComparator = new Comparator<SpatialPoint>() {
@@ -252,23 +446,23 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
                         return (int)(deltaDist /(Math.abs(deltaDist)));
                 }
             };
-            Collections.sort(_rangeSearchResult, paramComparator);
-            _knnSearchResult = _rangeSearchResult.subList(0, k);
+            Collections.sort(result, paramComparator);
+            return result.subList(0, k);
         }
     }
 
-    private int treatLeafOverflow(RStarLeaf target, SpatialPoint point) {
+    private int treatLeafOverflow(RStarLeaf target, SpatialPoint point, List<RStarNode> path) {
         try {
-            splitLeaf(target, point);
+            splitLeaf(target, point, path);
             return 1;
         } catch (AssertionError e) {
             return -1;
         }
     }
 
-    private int treatInternalOverflow(RStarInternal fullNode, RStarNode newChild) {
+    private int treatInternalOverflow(RStarInternal fullNode, RStarNode newChild, List<RStarNode> path, int level) {
         try {
-            splitInternalNode(fullNode, newChild);
+            splitInternalNode(fullNode, newChild, path, level);
             return 1;
         } catch (AssertionError e) {
             return -1;
@@ -279,10 +473,12 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
      * inserts point into and splits the target leafnode
      * @param splittingLeaf the leaf to split
      * @param newPoint the point to be inserted
+     * @param path root-to-leaf path loaded by chooseLeaf,
+     *             ending with splittingLeaf
      * @throws AssertionError when the target node does
      * not have any children
      */
-    private void splitLeaf(RStarLeaf splittingLeaf, SpatialPoint newPoint) throws AssertionError {
+    private void splitLeaf(RStarLeaf splittingLeaf, SpatialPoint newPoint, List<RStarNode> path) throws AssertionError {
         RStarLeaf newChild = splitManager.splitLeaf(splittingLeaf, newPoint);
         if (splittingLeaf.getNodeId() == rootPointer) {
             //we just split root
@@ -290,7 +486,7 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
             createRoot(newChild);
         } else {
             newChild.setParentId(splittingLeaf.getParentId());
-            insertAt(splittingLeaf.getParentId(), newChild);
+            insertAt(splittingLeaf.getParentId(), newChild, path, path.size() - 2);
         }
     }
 
@@ -298,8 +494,10 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
      * splits an internal node and inserts a new node
      * @param splittingNode the node to be split
      * @param node the node to be inserted
+     * @param path root-to-leaf path loaded by chooseLeaf
+     * @param level position of splittingNode in path
      */
-    private void splitInternalNode(RStarInternal splittingNode, RStarNode node) {
+    private void splitInternalNode(RStarInternal splittingNode, RStarNode node, List<RStarNode> path, int level) {
         RStarNode createdNode;
         try {
             createdNode = splitManager.splitInternalNode(splittingNode, node);
@@ -309,7 +507,7 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
                 createRoot(createdNode);
             } else {
                 createdNode.setParentId(splittingNode.getParentId());
-                insertAt(splittingNode.getParentId(), createdNode);
+                insertAt(splittingNode.getParentId(), createdNode, path, level - 1);
             }
         } catch (FileNotFoundException e) {
             System.err.println("Exception while loading node from disk. message: "+e.getMessage());
@@ -322,7 +520,7 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
      * @param siblingOfRoot node created by splitting current root
      */
     private void createRoot(RStarNode siblingOfRoot) {
-        RStarInternal newRoot = new RStarInternal(dimension);
+        RStarInternal newRoot = new RStarInternal(context);
         newRoot.setParentId(newRoot.getNodeId());
         newRoot.insert(root);
         newRoot.insert(siblingOfRoot);
@@ -337,32 +535,49 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
      * finds the most appropriate leaf node to
      * insert the newPoint into
      * @param newPoint the point to be inserted
+     * @param path receives the nodes from the root down to
+     *             the chosen leaf
      * @return RStarLeaf the most appropriate leaf to insert
      * newPoint
      */
-    private RStarLeaf chooseLeaf(SpatialPoint newPoint) {
+    private RStarLeaf chooseLeaf(SpatialPoint newPoint, List<RStarNode> path) {
         loadRoot();
         SpatialPoint[] temp = new SpatialPoint[1];
         temp[0] = newPoint;
-        return splitManager.chooseLeaf(root, new HyperRectangle(dimension, temp));
+        return splitManager.chooseLeaf(root, new HyperRectangle(dimension, temp), path);
     }
 
     /**
-     * updates mbr of all ancestor of a node
+     * updates mbr of the ancestors of a node. propagation stops
+     * at the first ancestor whose mbr already covers the child,
+     * since nothing above it can change either.
      * @param target updation starts from the parent of target
+     * @param path root-to-leaf path loaded by chooseLeaf
+     * @param level position of target in path
      */
-    private void adjustParentOf(RStarNode target) {
+    private void adjustParentOf(RStarNode target, List<RStarNode> path, int level) {
         if (target.getNodeId() != rootPointer) {
-            RStarNode parent = loadNode(target.getParentId());
-            HyperRectangle mbr = parent.getMBR();
-            mbr.update(target.getMBR());
-            parent.setMbr(mbr);
+            RStarNode parent = nodeOnPath(target.getParentId(), path, level - 1);
+            if (!parent.getMBR().update(target.getMBR())) {
+                return;
+            }
             storage.saveNode(parent);
             if (parent.getNodeId() == rootPointer) {
                 root = parent;
             }
-            adjustParentOf(parent);
+            adjustParentOf(parent, path, level - 1);
+        }
+    }
+
+    /**
+     * returns the node at the given level of path if it is the
+     * node with nodeId, otherwise loads the node.
+     */
+    private RStarNode nodeOnPath(long nodeId, List<RStarNode> path, int level) {
+        if (level >= 0 && level < path.size() && path.get(level).getNodeId() == nodeId) {
+            return path.get(level);
         }
+        return loadNode(nodeId);
     }
 
     /*
@@ -376,11 +591,16 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
      */
     private void loadRoot() {
         if (root == null) {
-            //empty tree
-            root = loadNode(rootPointer);
+            if (rootPointer != -1) {
+                try {
+                    root = storage.loadNode(rootPointer);
+                } catch (FileNotFoundException e) {
+                    System.err.println("Error while loading R* Tree root " + rootPointer + ". message: " + e.getMessage());
+                }
+            }
             if (root == null)            // still null -> empty tree
             {
-                root = new RStarLeaf(dimension);
+                root = new RStarLeaf(context);
                 root.setParentId(root.getNodeId());
             }
             rootPointer = root.getNodeId();
@@ -404,7 +624,7 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
                     return storage.loadNode(nodeId);
                 }
             } catch (FileNotFoundException e) {
-                System.err.println("Error while loading R* Tree node from file " + storage.constructFilename(nodeId));
+                System.err.println("Error while loading R* Tree node " + nodeId + ". message: " + e.getMessage());
             }
         }
         return null;
@@ -426,24 +646,141 @@ public class RStarTree implements ISpatialQuery, IDtoConvertible {
      */
     @Override
     public TreeDTO toDTO() {
-        return new TreeDTO(dimension, Constants.PAGESIZE, rootPointer);
+        return new TreeDTO(dimension, config.getPagesize(), rootPointer, config.getMaxChildren(), config.getMinChildren(),
+                context.getAllocator().toDTO());
     }
 
-    /*private void loadTree() {
-        if (saveFile.exists() && saveFile.length() != 0) {
-            try {
-                TreeDTO treeData = storage.loadTree(saveFile);
-                if (treeData != null) {             //update tree fields from saveFile
-                    this.dimension = treeData.dimension;
-                    this.pagesize = treeData.pagesize;
-                    this.rootPointer = treeData.rootPointer;
-                    System.out.printf("Tree loaded successfully from %s. dimension = %d and pagesize = %d bytes%n",
-                            saveFile.getName(), dimension, pagesize);
+    /**
+     * reopens the tree stored in the configured directory, if any.
+     * The root pointer and the page allocator are restored, so new
+     * nodes never overwrite the files of existing ones.
+     */
+    private void loadTree() {
+        TreeDTO treeData = storage.loadTree(saveFile);
+        if (treeData != null && treeData.allocator != null) {             //update tree fields from saveFile
+            if (treeData.dimension != dimension || treeData.maxChildren != config.getMaxChildren()
+                    || treeData.minChildren != config.getMinChildren()) {
+                throw new IllegalStateException("Tree in " + config.getDirectory() + " was built with dimension = "
+                        + treeData.dimension + ", M = " + treeData.maxChildren + ", m = " + treeData.minChildren);
+            }
+            this.rootPointer = treeData.rootPointer;
+            context.getAllocator().restore(treeData.allocator);
+            System.out.printf("Tree loaded successfully from %s. dimension = %d and pagesize = %d bytes%n",
+                    saveFile.getName(), dimension, treeData.pagesize);
+        }
+    }
+
+    /**
+     * removes all points and nodes, leaving an empty tree
+     * @return 1 if successful, -1 otherwise
+     */
+    public int clear() {
+        storage.clear();
+        root = null;
+        rootPointer = -1;
+        return save();
+    }
+
+    /**
+     * rewrites the tree into a fresh store, so that ids are dense
+     * and nodes are stored in breadth-first order: a level of the
+     * tree occupies consecutive ids, leaves come last and their
+     * points are written in leaf order. The new store replaces the
+     * old one only when it is complete.
+     * @return 1 if successful, -1 otherwise
+     */
+    public int compact() {
+        loadRoot();
+        save();
+
+        // old ids in breadth-first order, siblings left to right
+        List<Long> order = new ArrayList<Long>();
+        order.add(rootPointer);
+        for (int i = 0; i < order.size(); i++) {
+            RStarNode node = loadNode(order.get(i));
+            if (node == null)
+                return -1;
+            if (!node.isLeaf())
+                order.addAll(node.childPointers);
+        }
+
+        AllocatorDTO oldAllocator = context.getAllocator().toDTO();
+        context.getAllocator().reset();
+        Map<Long, Long> newIds = new HashMap<Long, Long>(order.size() * 2);
+        for (Long oldId : order) {
+            newIds.put(oldId, context.nextNodeId());
+        }
+
+        IDiskQuery target = storage.createCompactionTarget();
+        try {
+            for (Long oldId : order) {
+                RStarNode node = storage.loadNode(oldId);
+                NodeDTO dto = node.toDTO();
+                ArrayList<Long> children = new ArrayList<Long>(dto.children.size());
+                for (Long child : dto.children) {
+                    children.add(node.isLeaf() ? target.savePoint(storage.loadPoint(child)) : newIds.get(child));
                 }
-            } catch (FileNotFoundException e) {
-                System.err.println("Failed to load R* Tree from "+saveFile.getName());
+                NodeDTO moved = new NodeDTO(newIds.get(dto.parentId), dto.isLeaf, dto.mbr, children);
+                long newId = newIds.get(oldId);
+                target.saveNode(node.isLeaf() ? new RStarLeaf(moved, newId, context)
+                        : new RStarInternal(moved, newId, context));
             }
+        } catch (FileNotFoundException e) {
+            System.err.println("Error while compacting R* Tree. message: " + e.getMessage());
+            target.close();
+            context.getAllocator().restore(oldAllocator);
+            return -1;
+        }
 
+        rootPointer = newIds.get(rootPointer);
+        root = null;
+        storage.commitCompaction(target, toDTO());
+        return 1;
+    }
+
+    /**
+     * writes a read-only copy of the tree into a single file that
+     * query workers can map with TreeSnapshot. Nodes are written
+     * breadth-first, the points of every leaf next to each other.
+     * @param file the snapshot file, overwritten if it exists
+     * @return 1 if successful, -1 otherwise
+     */
+    public int exportSnapshot(File file) {
+        loadRoot();
+        try {
+            TreeSnapshot.Writer writer = new TreeSnapshot.Writer(file, dimension);
+            List<Long> order = new ArrayList<Long>();
+            order.add(rootPointer);
+            for (int i = 0; i < order.size(); i++) {
+                RStarNode node = loadNode(order.get(i));
+                if (node == null) {
+                    writer.close();
+                    return -1;
+                }
+                if (node.isLeaf()) {
+                    writer.addNode(true, node.childPointers.size(), writer.pointCount(), node.getMBR().getPoints());
+                    for (Long pointer : node.childPointers) {
+                        writer.addPoint(storage.loadPoint(pointer));
+                    }
+                } else {
+                    writer.addNode(false, node.childPointers.size(), order.size(), node.getMBR().getPoints());
+                    order.addAll(node.childPointers);
+                }
+            }
+            writer.close();
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Error while writing snapshot to " + file + ". message: " + e.getMessage());
+            return -1;
         }
-    }*/
+    }
+
+    /**
+     * saves the tree and releases its storage
+     */
+    public void close() {
+        setReadAhead(0);
+        save();
+        storage.close();
+    }
 }
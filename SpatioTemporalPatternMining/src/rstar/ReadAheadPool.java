@@ -0,0 +1,55 @@
+package rstar;
+
+import rstar.dto.PointDTO;
+import rstar.interfaces.IDiskQuery;
+import rstar.nodes.RStarNode;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * a small pool of I/O threads that loads nodes and points
+ * ahead of the traversal, so several reads are in flight
+ * at the same time instead of one.
+ */
+public class ReadAheadPool {
+    private ExecutorService executor;
+    private IDiskQuery storage;
+
+    public ReadAheadPool(IDiskQuery storage, int threads) {
+        this.storage = storage;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "rstar-read-ahead");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public Future<RStarNode> loadNode(final long nodeId) {
+        return executor.submit(new Callable<RStarNode>() {
+            @Override
+            public RStarNode call() throws Exception {
+                return storage.loadNode(nodeId);
+            }
+        });
+    }
+
+    public Future<PointDTO> loadPoint(final long pointer) {
+        return executor.submit(new Callable<PointDTO>() {
+            @Override
+            public PointDTO call() throws Exception {
+                return storage.loadPoint(pointer);
+            }
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -8,10 +8,18 @@ import rstar.nodes.RStarInternal;
 import rstar.nodes.RStarLeaf;
 import rstar.nodes.RStarNode;
 import util.Constants;
+import util.LabelDictionary;
 
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * provides all disk related functionality like
@@ -20,75 +28,167 @@ import java.nio.channels.FileChannel;
 public class StorageManager implements IDiskQuery {
     RandomAccessFile dataStore;
     FileChannel dataChannel;
+    private TreeContext context;
+    private File directory;
+    private LabelDictionary labels;
+    private FileOutputStream labelFileOutput;
+    private DataOutputStream labelOutput;
+    private Journal journal;
+    private final Map<Long, byte[]> pendingNodes = new LinkedHashMap<Long, byte[]>();
+    private TreeDTO lastCommitted;
+    private static final int POINT_READ_BUFFER = 512;
+    private static final String COMPACT_DIRECTORY = "compact";
+    private static final String COMMIT_MARKER = "COMMIT";
+    private static final String OLD_SUFFIX = ".old";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private RandomAccessFile lockFile;
+    private FileLock lock;
 
-    public StorageManager() {
+    /**
+     * opens (or creates) the data file and node directory
+     * of the tree described by context. The tree directory
+     * is locked, so no other builder can write to it while
+     * this one is open.
+     */
+    public StorageManager(TreeContext context) {
+        this(context, context.getConfig().getDirectory());
+    }
+
+    private StorageManager(TreeContext context, File directory) {
+        this.context = context;
+        this.directory = directory;
+        createDataDir();
+        lockDirectory();
+        recoverCompaction();
+        openDataFile();
+        recoverJournal();
+    }
+
+    private void openDataFile() {
         try {
-            dataStore = new RandomAccessFile(Constants.DATA_FILE, "rw");
+            dataStore = new RandomAccessFile(new File(directory, Constants.DATA_FILE), "rw");
             dataChannel = dataStore.getChannel();
         } catch (FileNotFoundException e) {
             System.err.println("Data File failed to be loaded/created. Exiting");
             System.exit(1);
         }
+        openLabelFile();
+    }
+
+    /**
+     * reads the labels of the stored points, in the order of
+     * their ids, and opens the label file for appending.
+     */
+    private void openLabelFile() {
+        File labelFile = new File(directory, Constants.LABEL_FILE);
+        labels = new LabelDictionary();
+        try {
+            if (labelFile.exists()) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(labelFile)));
+                try {
+                    while (true) {
+                        labels.intern(in.readUTF());
+                    }
+                } catch (EOFException e) {
+                    // all labels read
+                }
+                in.close();
+            }
+            labelFileOutput = new FileOutputStream(labelFile, true);
+            labelOutput = new DataOutputStream(new BufferedOutputStream(labelFileOutput));
+        } catch (IOException e) {
+            System.err.println("Label File failed to be loaded/created. Exiting");
+            System.exit(1);
+        }
     }
 
     @Override
     public void saveNode(RStarNode node) {
         if (node.isLeaf()) {
-            try {
-                RStarLeaf leaf = (RStarLeaf) node;
+            RStarLeaf leaf = (RStarLeaf) node;
 
-                if (leaf.hasUnsavedPoints()) {
-                    //save unsaved points to disk first.
-                    for (int i = leaf.loadedChildren.size() - 1; i >= 0; i--) {
-                        leaf.childPointers.add(savePoint(leaf.loadedChildren.remove(i).toDTO()));
-                    }
+            if (leaf.hasUnsavedPoints()) {
+                //save unsaved points to disk first.
+                for (int i = leaf.loadedChildren.size() - 1; i >= 0; i--) {
+                    leaf.childPointers.add(savePoint(leaf.loadedChildren.remove(i).toDTO()));
                 }
-
-                FileOutputStream fos = new FileOutputStream(new File(constructFilename(leaf.getNodeId())));
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(bos);
-                oos.writeObject(leaf.toDTO());
-                oos.flush();
-
-                fos.write(bos.toByteArray());
-                oos.close();
-                fos.close();
-
-            } catch (FileNotFoundException e) {
-                System.err.println("Exception while saving node to disk");
-            } catch (IOException e) {
-                System.err.println("Exception while saving node to disk");
             }
-        } else {
-            try {
-                RStarInternal internal = (RStarInternal) node;
-
-                FileOutputStream fos = new FileOutputStream(new File(constructFilename(internal.getNodeId())));
-                ByteArrayOutputStream bos = new ByteArrayOutputStream();
-                ObjectOutputStream oos = new ObjectOutputStream(bos);
-                oos.writeObject(internal.toDTO());
-                oos.flush();
-
-                fos.write(bos.toByteArray());
-                oos.close();
-                fos.close();
+        }
 
-            } catch (FileNotFoundException e) {
-                System.err.println("Exception while saving node to disk");
-            } catch (IOException e) {
-                System.err.println("Exception while saving node to disk");
+        try {
+            NodeDTO dto = node.toDTO();
+            byte[] data = PageCodec.encodeNode(dto);
+            if (journal != null) {
+                // the node file is written at the next checkpoint
+                journal.append(Journal.NODE, node.getNodeId(), data);
+                synchronized (pendingNodes) {
+                    pendingNodes.put(node.getNodeId(), data);
+                }
+            } else {
+                writeNodeFile(node.getNodeId(), data, false);
             }
+        } catch (IOException e) {
+            System.err.println("Exception while saving node to disk");
         }
     }
 
+    private void writeNodeFile(long nodeId, byte[] data, boolean sync) throws IOException {
+        FileOutputStream fos = new FileOutputStream(new File(constructFilename(nodeId)));
+        fos.write(data);
+        if (sync)
+            fos.getFD().sync();
+        fos.close();
+    }
+
     @Override
     public RStarNode loadNode(long nodeId) throws FileNotFoundException {
+        if (journal != null) {
+            byte[] data;
+            synchronized (pendingNodes) {
+                data = pendingNodes.get(nodeId);
+            }
+            if (data == Journal.DELETED) {
+                // the file is only removed at the next checkpoint
+                throw new FileNotFoundException("Node " + nodeId + " was deleted");
+            }
+            if (data != null) {
+                try {
+                    return decodeNode(data, nodeId);
+                } catch (Exception e) {
+                    System.err.println("Exception while decoding journaled node " + nodeId);
+                }
+            }
+        }
         return nodeFromDisk(constructFilename(nodeId));
     }
 
+    @Override
+    public void deleteNode(long nodeId) {
+        if (journal != null) {
+            try {
+                journal.append(Journal.DELETE, nodeId, new byte[0]);
+                // the id is released once the deletion is checkpointed
+                synchronized (pendingNodes) {
+                    pendingNodes.put(nodeId, Journal.DELETED);
+                }
+            } catch (IOException e) {
+                System.err.println("Exception while journaling deletion of node " + nodeId);
+            }
+            return;
+        }
+        File nodeFile = new File(constructFilename(nodeId));
+        if (nodeFile.exists() && !nodeFile.delete()) {
+            System.err.println("Failed to delete node file " + nodeFile);
+            return;
+        }
+        context.getAllocator().release(nodeId);
+    }
+
     /**
      * saves a Spatial Point to dataFile on disk and
      * returns the offset of the point in the file.
+     * A label seen for the first time is appended to
+     * the label file before the point is written.
      *
      * @param pointDTO DTO of the point to be saved
      * @return the location where the point was saved in
@@ -97,16 +197,20 @@ public class StorageManager implements IDiskQuery {
     @Override
     public long savePoint(PointDTO pointDTO) {
         try {
-            long pos = dataStore.length();
-            dataStore.seek(pos);
-
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(bos);
-            oos.writeObject(pointDTO);
-            oos.flush();
+            int known = labels.size();
+            int labelId = labels.intern(pointDTO.label);
+            if (labelId >= known) {
+                labelOutput.writeUTF(pointDTO.label);
+                labelOutput.flush();
+                if (journal != null)
+                    labelFileOutput.getFD().sync();     // journaled points refer to the label id
+            }
 
-            dataChannel.write(ByteBuffer.wrap(bos.toByteArray()));
-            oos.close();
+            long pos = dataStore.length();
+            byte[] data = PageCodec.encodePoint(pointDTO, labelId);
+            dataChannel.write(ByteBuffer.wrap(data), pos);
+            if (journal != null)
+                journal.append(Journal.POINT, pos, data);
             return pos;
         } catch (IOException e) {
             System.err.println("Exception occurred while saving data to disk.");
@@ -124,8 +228,13 @@ public class StorageManager implements IDiskQuery {
     @Override
     public PointDTO loadPoint(long pointer) {
         try {
-            dataStore.seek(pointer);
-            ObjectInputStream ois = getPointObjectStream();
+            byte[] record = new byte[PageCodec.maxPointSize(context.getDimension())];
+            dataChannel.read(ByteBuffer.wrap(record), pointer);
+            if ((record[0] & 0xFF) != PageCodec.STREAM_MAGIC)
+                return PageCodec.decodePoint(record, 0, labels);
+
+            // written by an older version
+            ObjectInputStream ois = getPointObjectStream(pointer);
             PointDTO pointDTO = (PointDTO) ois.readObject();
             ois.close();
             return pointDTO;
@@ -134,24 +243,15 @@ public class StorageManager implements IDiskQuery {
             System.err.println("Exception occurred while loading point from disk.");
         } catch (ClassNotFoundException e) {
             System.err.println("Exception occurred while loading point from disk.");
+        } catch (RuntimeException e) {
+            System.err.println("Exception occurred while loading point from disk. message: " + e.getMessage());
         }
         return null;
     }
 
     private RStarNode nodeFromDisk(String filename) throws FileNotFoundException {
         try {
-            FileInputStream fis = new FileInputStream(filename);
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            NodeDTO dto = (NodeDTO) ois.readObject();
-            ois.close();
-
-            RStarNode result;
-            if (dto.isLeaf)
-                result = new RStarLeaf(dto, nodeIdFromFilename(filename));
-            else
-                result = new RStarInternal(dto, nodeIdFromFilename(filename));
-
-            return result;
+            return decodeNode(Files.readAllBytes(Paths.get(filename)), nodeIdFromFilename(filename));
         } catch (IOException e) {
             System.err.println(e.getMessage());
         } catch (ClassNotFoundException e) {
@@ -160,6 +260,23 @@ public class StorageManager implements IDiskQuery {
         return null;
     }
 
+    private RStarNode decodeNode(byte[] data, long nodeId) throws IOException, ClassNotFoundException {
+        NodeDTO dto;
+        if (data.length > 0 && (data[0] & 0xFF) == PageCodec.STREAM_MAGIC) {
+            // written by an older version
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
+            dto = (NodeDTO) ois.readObject();
+            ois.close();
+        } else {
+            dto = PageCodec.decodeNode(data);
+        }
+
+        if (dto.isLeaf)
+            return new RStarLeaf(dto, nodeId, context);
+        else
+            return new RStarInternal(dto, nodeId, context);
+    }
+
     /**
      * saves the R* Tree to saveFile.
      * doesn't use RandomAccessFile
@@ -169,18 +286,31 @@ public class StorageManager implements IDiskQuery {
      */
     @Override
     public int saveTree(TreeDTO tree, File saveFile) {
+        if (journal != null && saveFile.equals(treeFile())) {
+            lastCommitted = tree;
+            return checkpoint();
+        }
+        return writeTreeFile(tree, saveFile, false);
+    }
+
+    /**
+     * writes the tree file next to saveFile and renames it over
+     * saveFile, so a crash never leaves a half written tree file
+     */
+    private int writeTreeFile(TreeDTO tree, File saveFile, boolean sync) {
         int status = -1;
         try {
-            if(saveFile.exists()) {
-                saveFile.delete();
-            }
-
-            FileOutputStream fos = new FileOutputStream(saveFile);
+            File tempFile = new File(saveFile.getPath() + TEMP_SUFFIX);
+            FileOutputStream fos = new FileOutputStream(tempFile);
             ObjectOutputStream oos = new ObjectOutputStream(fos);
 
             oos.writeObject(tree);
             oos.flush();
+            if (sync)
+                fos.getFD().sync();
             oos.close();
+            if (!tempFile.renameTo(saveFile))
+                throw new IOException("rename failed");
             status = 1;             // successful saveNode
         } catch (IOException e) {
             System.err.println("Error while saving Tree to " + saveFile.toURI());
@@ -189,18 +319,171 @@ public class StorageManager implements IDiskQuery {
     }
 
     /**
-     * loads a R* Tree from disk
+     * ends one tree operation. With a journal its writes become
+     * durable with the next group commit, and a checkpoint is
+     * taken once the journal has grown large.
+     */
+    @Override
+    public void commit(TreeDTO tree) {
+        if (journal == null)
+            return;
+        try {
+            journal.commit(tree);
+            lastCommitted = tree;
+        } catch (IOException e) {
+            System.err.println("Exception while committing to the journal.");
+            return;
+        }
+        if (journal.size() >= Constants.JOURNAL_CHECKPOINT_SIZE) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * NONE writes node files in place. BATCH and SYNC journal all
+     * writes and apply them to the node files at checkpoints.
+     */
+    @Override
+    public void setDurability(Durability durability, int groupSize, long groupInterval) {
+        try {
+            if (durability == Durability.NONE) {
+                if (journal != null) {
+                    checkpoint();
+                    journal.close();
+                    journal = null;
+                    Files.deleteIfExists(journalFile().toPath());
+                }
+                return;
+            }
+            if (journal == null) {
+                journal = new Journal(journalFile());
+            }
+            journal.setDurability(durability, groupSize, groupInterval);
+        } catch (IOException e) {
+            System.err.println("Exception while opening the journal. Exiting");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * writes the journaled node images to their files, syncs them,
+     * the data file and the tree file, and then empties the journal.
+     * @return 1 if successful, else -1
+     */
+    private int checkpoint() {
+        Map<Long, byte[]> nodes;
+        synchronized (pendingNodes) {
+            nodes = new LinkedHashMap<Long, byte[]>(pendingNodes);
+        }
+        try {
+            journal.sync();
+            applyNodes(nodes);
+            dataChannel.force(false);
+            if (lastCommitted != null && writeTreeFile(lastCommitted, treeFile(), true) != 1)
+                return -1;
+            journal.truncate();
+        } catch (IOException e) {
+            System.err.println("Exception while writing a checkpoint. Journal kept.");
+            return -1;
+        }
+        synchronized (pendingNodes) {
+            // nodes saved since the copy was taken stay pending
+            for (Map.Entry<Long, byte[]> node : nodes.entrySet()) {
+                if (pendingNodes.get(node.getKey()) == node.getValue()) {
+                    pendingNodes.remove(node.getKey());
+                    if (node.getValue() == Journal.DELETED)
+                        context.getAllocator().release(node.getKey());
+                }
+            }
+        }
+        return 1;
+    }
+
+    private void applyNodes(Map<Long, byte[]> nodes) throws IOException {
+        for (Map.Entry<Long, byte[]> node : nodes.entrySet()) {
+            if (node.getValue() == Journal.DELETED) {
+                Files.deleteIfExists(Paths.get(constructFilename(node.getKey())));
+            } else {
+                writeNodeFile(node.getKey(), node.getValue(), true);
+            }
+        }
+        syncDirectory(nodeDirectory());
+    }
+
+    private static void syncDirectory(File dir) {
+        try {
+            FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ);
+            channel.force(true);
+            channel.close();
+        } catch (IOException e) {
+            // not supported on every platform
+        }
+    }
+
+    /**
+     * applies the operations committed to a journal left by a crash
+     * and removes the journal
+     */
+    private void recoverJournal() {
+        File file = journalFile();
+        if (!file.exists())
+            return;
+        try {
+            Journal.Recovery recovery = Journal.replay(file);
+            if (recovery != null) {
+                applyNodes(recovery.nodes);
+                for (int i = 0; i < recovery.points.size(); i++) {
+                    dataChannel.write(ByteBuffer.wrap(recovery.points.get(i)), recovery.pointOffsets.get(i));
+                }
+                dataChannel.force(false);
+                if (writeTreeFile(recovery.tree, treeFile(), true) != 1)
+                    throw new IOException("tree file not written");
+                System.out.println("Recovered " + recovery.nodes.size() + " nodes and " + recovery.points.size() +
+                        " points from the journal");
+            }
+            Files.delete(file.toPath());
+        } catch (IOException e) {
+            System.err.println("Exception while replaying the journal " + file + ". Exiting");
+            System.exit(1);
+        }
+    }
+
+    private File journalFile() {
+        return new File(directory, Constants.JOURNAL_FILE);
+    }
+
+    private File treeFile() {
+        return new File(directory, Constants.TREE_FILE);
+    }
+
+    /**
+     * loads a R* Tree from disk. Node files written after the
+     * metadata was last saved are marked as used in the returned
+     * allocator state, so their ids are never handed out again.
      * @param saveFile the file to loadNode the tree from
      * @return DTO of the loaded R* Tree, null if none found
      * @throws FileNotFoundException
      */
     @Override
     public TreeDTO loadTree(File saveFile) {
+        if (!saveFile.exists() || saveFile.length() == 0) {
+            return null;
+        }
         try {
             FileInputStream fis = new FileInputStream(saveFile);
             ObjectInputStream ois = new ObjectInputStream(fis);
 
-            return (TreeDTO) ois.readObject();
+            TreeDTO tree = (TreeDTO) ois.readObject();
+            ois.close();
+            if (tree.allocator != null) {
+                PageAllocator allocator = new PageAllocator();
+                allocator.restore(tree.allocator);
+                for (long nodeId : existingNodeIds()) {
+                    allocator.markUsed(nodeId);
+                }
+                tree.allocator = allocator.toDTO();
+            }
+            return tree;
 
         } catch (IOException e) {
             System.err.println("Exception while loading tree from " + saveFile);
@@ -211,34 +494,223 @@ public class StorageManager implements IDiskQuery {
     }
 
     public String constructFilename(long nodeId) {
-        return Constants.TREE_DATA_DIRECTORY + "/" + Constants.NODE_FILE_PREFIX + nodeId + Constants.NODE_FILE_SUFFIX;
+        return new File(nodeDirectory(),
+                Constants.NODE_FILE_PREFIX + nodeId + Constants.NODE_FILE_SUFFIX).getPath();
     }
 
     public long nodeIdFromFilename(String filename) {
-        int i2 = filename.indexOf(Constants.NODE_FILE_SUFFIX);
+        String name = new File(filename).getName();
+        int i2 = name.indexOf(Constants.NODE_FILE_SUFFIX);
         assert i2 != -1;
-        return Long.parseLong(filename.substring((Constants.TREE_DATA_DIRECTORY+"/"+Constants.NODE_FILE_PREFIX).length(), i2));
+        return Long.parseLong(name.substring(Constants.NODE_FILE_PREFIX.length(), i2));
     }
 
-    private ObjectInputStream getPointObjectStream() throws IOException {
-        return new ObjectInputStream(new InputStream() {
+    /**
+     * reads from the data file with positional reads, which do not
+     * move the file pointer, so points can be loaded concurrently.
+     * @param pointer offset in the data file to start reading at
+     */
+    private ObjectInputStream getPointObjectStream(final long pointer) throws IOException {
+        return new ObjectInputStream(new BufferedInputStream(new InputStream() {
+            private long position = pointer;
+
             @Override
             public int read() throws IOException {
-                return dataStore.read();
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : (b[0] & 0xff);
             }
 
             @Override
             public int read(byte[] b, int off, int len) throws IOException {
-                return dataStore.read(b, off, len);
+                int read = dataChannel.read(ByteBuffer.wrap(b, off, len), position);
+                if (read > 0)
+                    position += read;
+                return read;
+            }
+        }, POINT_READ_BUFFER));
+    }
+
+    /**
+     * deletes all node files and empties the data file
+     */
+    @Override
+    public void clear() {
+        for (long nodeId : existingNodeIds()) {
+            File nodeFile = new File(constructFilename(nodeId));
+            if (!nodeFile.delete()) {
+                System.err.println("Failed to delete node file " + nodeFile);
+            }
+        }
+        try {
+            dataStore.setLength(0);
+            labelOutput.close();
+            labelFileOutput = new FileOutputStream(new File(directory, Constants.LABEL_FILE));
+            labelOutput = new DataOutputStream(new BufferedOutputStream(labelFileOutput));
+            labels.clear();
+            if (journal != null) {
+                journal.truncate();
+                synchronized (pendingNodes) {
+                    pendingNodes.clear();
+                }
+                lastCommitted = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Exception while truncating data file.");
+        }
+        context.getAllocator().reset();
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (journal != null) {
+                checkpoint();
+                journal.close();
+                journal = null;
+                Files.deleteIfExists(journalFile().toPath());
             }
-        });
+            dataStore.close();
+            labelOutput.close();
+            if (lock != null) {
+                lock.release();
+                lockFile.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Exception while closing the tree storage.");
+        }
+    }
+
+    /**
+     * creates an empty store in the compact sub directory of
+     * this tree. Leftovers of an unfinished compaction are removed.
+     */
+    @Override
+    public IDiskQuery createCompactionTarget() {
+        File target = new File(directory, COMPACT_DIRECTORY);
+        deleteRecursively(target);
+        return new StorageManager(context, target);
+    }
+
+    /**
+     * swaps the files written by a compaction in. The target is first
+     * marked as complete; from then on an interrupted swap is finished
+     * when the tree is opened again, so the old and the new tree are
+     * never mixed.
+     */
+    @Override
+    public void commitCompaction(IDiskQuery target, TreeDTO tree) {
+        StorageManager compacted = (StorageManager) target;
+        compacted.saveTree(tree, compacted.treeFile());
+        lastCommitted = tree;
+        compacted.close();
+        try {
+            if (!new File(compacted.directory, COMMIT_MARKER).createNewFile())
+                throw new IOException("commit marker exists");
+            dataStore.close();
+            labelOutput.close();
+        } catch (IOException e) {
+            System.err.println("Exception while committing compaction. Old tree kept.");
+            return;
+        }
+        recoverCompaction();
+        openDataFile();
+    }
+
+    /**
+     * finishes a committed compaction, or throws away one that
+     * was not committed
+     */
+    private void recoverCompaction() {
+        File compact = new File(directory, COMPACT_DIRECTORY);
+        if (!compact.exists())
+            return;
+
+        if (new File(compact, COMMIT_MARKER).exists()) {
+            // the tree file goes last: until it is replaced the old root is used
+            String[] entries = {Constants.TREE_DATA_DIRECTORY, Constants.DATA_FILE, Constants.LABEL_FILE,
+                    Constants.TREE_FILE};
+            for (String entry : entries) {
+                File source = new File(compact, entry);
+                File dest = new File(directory, entry);
+                if (!source.exists())
+                    continue;
+                File old = new File(directory, entry + OLD_SUFFIX);
+                deleteRecursively(old);
+                if (dest.exists() && !dest.renameTo(old)) {
+                    System.err.println("Failed to move " + dest + " aside. Exiting");
+                    System.exit(1);
+                }
+                if (!source.renameTo(dest)) {
+                    System.err.println("Failed to move " + source + " in place. Exiting");
+                    System.exit(1);
+                }
+                deleteRecursively(old);
+            }
+        }
+        deleteRecursively(compact);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            System.err.println("Failed to delete " + file);
+        }
+    }
+
+    private File nodeDirectory() {
+        return new File(directory, Constants.TREE_DATA_DIRECTORY);
+    }
+
+    /**
+     * @return ids of all node files in the node directory
+     */
+    private long[] existingNodeIds() {
+        String[] names = nodeDirectory().list();
+        if (names == null)
+            return new long[0];
+
+        long[] ids = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith(Constants.NODE_FILE_PREFIX) && name.endsWith(Constants.NODE_FILE_SUFFIX)) {
+                try {
+                    ids[count++] = nodeIdFromFilename(name);
+                } catch (NumberFormatException e) {
+                    count--;
+                }
+            }
+        }
+        long[] result = new long[count];
+        System.arraycopy(ids, 0, result, 0, count);
+        return result;
+    }
+
+    private void lockDirectory() {
+        try {
+            lockFile = new RandomAccessFile(new File(directory, Constants.LOCK_FILE), "rw");
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        } catch (IOException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            System.err.println("Tree directory " + directory +
+                    " is in use by another builder. Exiting");
+            System.exit(1);
+        }
     }
 
-    public void createDataDir(File saveFile) {
-        // check for the node-data directory. create one if doesn't exist
-        File dataDir = new File(saveFile.getParentFile(), Constants.TREE_DATA_DIRECTORY);
+    public void createDataDir() {
+        // check for the node-data directory. create one (and the tree directory) if doesn't exist
+        File dataDir = nodeDirectory();
         if (!dataDir.exists() || !dataDir.isDirectory()) {
-            if (!dataDir.mkdir()) {
+            if (!dataDir.mkdirs()) {
                 System.err.println("Failed to create data directory of the tree. Exiting..");
                 System.exit(1);
             }
@@ -0,0 +1,39 @@
+package rstar;
+
+import rstar.interfaces.IDiskQuery;
+
+/**
+ * the storage backends a tree can be built on
+ */
+public enum StorageMode {
+    /** one file per node plus a data file, see StorageManager */
+    DISK {
+        @Override
+        public IDiskQuery create(TreeContext context) {
+            return new StorageManager(context);
+        }
+    },
+    /** live node objects on the java heap, see HeapStorage */
+    HEAP {
+        @Override
+        public IDiskQuery create(TreeContext context) {
+            return new HeapStorage(context);
+        }
+    },
+    /** fixed-stride records in direct buffers, see OffHeapStorage */
+    OFFHEAP {
+        @Override
+        public IDiskQuery create(TreeContext context) {
+            return new OffHeapStorage(context);
+        }
+    };
+
+    public abstract IDiskQuery create(TreeContext context);
+
+    /**
+     * @param name case insensitive name of the mode, e.g. "heap"
+     */
+    public static StorageMode fromName(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,99 @@
+package rstar;
+
+import util.Constants;
+
+import java.io.File;
+
+/**
+ * settings of a single R* tree: the dimension of its points,
+ * its node capacities and the directory it is stored in.
+ * Every tree owns its configuration, so several trees with
+ * different settings can be used in the same process.
+ */
+public class TreeConfig {
+    private final int dimension;
+    private final int pagesize;
+    private final int maxChildren;
+    private final int minChildren;
+    private final File directory;
+
+    /**
+     * configuration with the default capacities,
+     * stored in the working directory
+     * @param dimension dimension of the indexed points
+     */
+    public TreeConfig(int dimension) {
+        this(dimension, new File("."));
+    }
+
+    public TreeConfig(int dimension, File directory) {
+        this(dimension, Constants.DEFAULT_MAX_CHILDREN, Constants.DEFAULT_MIN_CHILDREN, directory);
+    }
+
+    /**
+     * configuration with as many children per node as
+     * fit in an encoded page of the default page size
+     * @param dimension dimension of the indexed points
+     */
+    public static TreeConfig forPage(int dimension, File directory) {
+        return new TreeConfig(dimension, Constants.maxChildrenForPage(Constants.PAGESIZE, dimension), directory);
+    }
+
+    public TreeConfig(int dimension, int maxChildren, File directory) {
+        this(dimension, maxChildren, Constants.minChildrenFor(maxChildren), directory);
+    }
+
+    /**
+     * @param dimension dimension of the indexed points
+     * @param maxChildren maximum number of entries in a node (M)
+     * @param minChildren minimum number of entries in a node (m), at most M/2
+     * @param directory directory holding the tree file, the data
+     *                  file and the node directory of this tree
+     */
+    public TreeConfig(int dimension, int maxChildren, int minChildren, File directory) {
+        if (maxChildren < 3 || minChildren < 1 || minChildren > maxChildren / 2)
+            throw new IllegalArgumentException("Invalid node capacities M = " + maxChildren + ", m = " + minChildren);
+
+        this.dimension = dimension;
+        this.pagesize = Constants.PAGESIZE;
+        this.maxChildren = maxChildren;
+        this.minChildren = minChildren;
+        this.directory = directory;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public int getPagesize() {
+        return pagesize;
+    }
+
+    public int getMaxChildren() {
+        return maxChildren;
+    }
+
+    public int getMinChildren() {
+        return minChildren;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public File getTreeFile() {
+        return new File(directory, Constants.TREE_FILE);
+    }
+
+    public File getDataFile() {
+        return new File(directory, Constants.DATA_FILE);
+    }
+
+    public File getNodeDirectory() {
+        return new File(directory, Constants.TREE_DATA_DIRECTORY);
+    }
+
+    public File getLockFile() {
+        return new File(directory, Constants.LOCK_FILE);
+    }
+}
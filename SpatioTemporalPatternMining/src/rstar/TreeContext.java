@@ -0,0 +1,40 @@
+package rstar;
+
+/**
+ * state shared by all parts of one tree: its configuration
+ * and the allocator of node ids. It is handed to the storage,
+ * the split manager and the nodes instead of global statics.
+ */
+public class TreeContext {
+    private final TreeConfig config;
+    private final PageAllocator allocator;
+
+    public TreeContext(TreeConfig config) {
+        this.config = config;
+        this.allocator = new PageAllocator();
+    }
+
+    public TreeConfig getConfig() {
+        return config;
+    }
+
+    public int getDimension() {
+        return config.getDimension();
+    }
+
+    public int getMaxChildren() {
+        return config.getMaxChildren();
+    }
+
+    public int getMinChildren() {
+        return config.getMinChildren();
+    }
+
+    public PageAllocator getAllocator() {
+        return allocator;
+    }
+
+    public long nextNodeId() {
+        return allocator.allocate();
+    }
+}
@@ -0,0 +1,293 @@
+package rstar;
+
+import rstar.dto.PointDTO;
+import rstar.spatial.HyperRectangle;
+import rstar.spatial.SpatialPoint;
+import util.LabelDictionary;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * a read-only copy of a finished tree in a single file, queried
+ * straight from a memory mapping. The file holds a header, a table
+ * of fixed-stride point records, a table of fixed-stride node records
+ * and the label dictionary. Nodes are numbered breadth-first, so the
+ * children of a node are consecutive records: an internal node stores
+ * the index of its first child node, a leaf the index of its first
+ * point. Opening a snapshot only reads the header and the labels.
+ */
+public class TreeSnapshot {
+    private static final int MAGIC = 0x52534E50;        // "RSNP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAX_CHUNK = 1 << 30;
+
+    // node record: leaf flag, entry count, first entry, mbr
+    private static final int NODE_LEAF = 0;
+    private static final int NODE_COUNT = 4;
+    private static final int NODE_FIRST = 8;
+    private static final int NODE_MBR = 16;
+
+    // point record: oid, label id, time, coordinates
+    private static final int POINT_OID = 0;
+    private static final int POINT_LABEL = 4;
+    private static final int POINT_TIME = 8;
+    private static final int POINT_CORDS = 16;
+
+    private int dimension;
+    private long nodeCount;
+    private long pointCount;
+    private Table nodes;
+    private Table points;
+    private String[] labels;
+
+    /**
+     * maps a snapshot written by RStarTree.exportSnapshot
+     * @param file the snapshot file
+     */
+    public TreeSnapshot(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                throw new IOException(file + " is not a tree snapshot");
+
+            dimension = header.getInt(8);
+            nodeCount = header.getLong(16);
+            long nodeOffset = header.getLong(24);
+            pointCount = header.getLong(32);
+            long pointOffset = header.getLong(40);
+            long labelOffset = header.getLong(48);
+            labels = new String[header.getInt(56)];
+
+            nodes = new Table(channel, nodeOffset, nodeStride(dimension), nodeCount);
+            points = new Table(channel, pointOffset, pointStride(dimension), pointCount);
+
+            channel.position(labelOffset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = in.readUTF();
+            }
+        } finally {
+            // the mappings stay valid after the file is closed
+            raf.close();
+        }
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public long size() {
+        return pointCount;
+    }
+
+    /**
+     * searches for points in the given range of the center point,
+     * with the same region and result order as RStarTree.rangeSearch
+     * @param center center point of the search region.
+     * @param range radius of the search region.
+     * @return List of all the points found in the range
+     */
+    public List<SpatialPoint> rangeSearch(SpatialPoint center, double range) {
+        float[] cords = center.getCords();
+        float[] max = new float[dimension];
+        float[] min = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            max[i] = cords[i] + (float) range;
+            min[i] = cords[i] - (float) range;
+        }
+        List<SpatialPoint> result = new ArrayList<SpatialPoint>();
+        if (nodeCount > 0)
+            rangeSearch(0, max, min, result);
+        return result;
+    }
+
+    private void rangeSearch(long node, float[] max, float[] min, List<SpatialPoint> result) {
+        ByteBuffer buffer = nodes.chunk(node);
+        int offset = nodes.offset(node);
+        if (!intersects(buffer, offset + NODE_MBR, max, min))
+            return;
+
+        int count = buffer.getInt(offset + NODE_COUNT);
+        long first = buffer.getLong(offset + NODE_FIRST);
+        if (buffer.getInt(offset + NODE_LEAF) == 1) {
+            for (long point = first; point < first + count; point++) {
+                ByteBuffer pointBuffer = points.chunk(point);
+                int pointOffset = points.offset(point);
+                if (containsPoint(pointBuffer, pointOffset + POINT_CORDS, max, min))
+                    result.add(new SpatialPoint(loadPoint(point)));
+            }
+        } else {
+            for (long child = first; child < first + count; child++) {
+                rangeSearch(child, max, min, result);
+            }
+        }
+    }
+
+    private boolean intersects(ByteBuffer buffer, int offset, float[] max, float[] min) {
+        for (int i = 0; i < dimension; i++) {
+            float nodeMax = buffer.getFloat(offset + (2 * i + HyperRectangle.MAX_CORD) * 4);
+            float nodeMin = buffer.getFloat(offset + (2 * i + HyperRectangle.MIN_CORD) * 4);
+            if (nodeMax < min[i] || nodeMin > max[i])
+                return false;
+        }
+        return true;
+    }
+
+    private boolean containsPoint(ByteBuffer buffer, int offset, float[] max, float[] min) {
+        for (int i = 0; i < dimension; i++) {
+            float cord = buffer.getFloat(offset + i * 4);
+            if (cord < min[i] || cord > max[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param index position of the point in the snapshot
+     */
+    public PointDTO loadPoint(long index) {
+        ByteBuffer buffer = points.chunk(index);
+        int offset = points.offset(index);
+        float[] cords = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            cords[i] = buffer.getFloat(offset + POINT_CORDS + i * 4);
+        }
+        int label = buffer.getInt(offset + POINT_LABEL);
+        return new PointDTO(buffer.getFloat(offset + POINT_OID), cords,
+                label == LabelDictionary.NO_LABEL ? null : labels[label], buffer.getLong(offset + POINT_TIME));
+    }
+
+    private static int nodeStride(int dimension) {
+        return NODE_MBR + 2 * dimension * 4;
+    }
+
+    private static int pointStride(int dimension) {
+        return POINT_CORDS + dimension * 4;
+    }
+
+    /**
+     * a table of fixed-stride records mapped in chunks that hold
+     * whole records, since a single mapping is limited to 2 GB
+     */
+    private static class Table {
+        private final int stride;
+        private final long recordsPerChunk;
+        private final MappedByteBuffer[] chunks;
+
+        Table(FileChannel channel, long offset, int stride, long count) throws IOException {
+            this.stride = stride;
+            this.recordsPerChunk = MAX_CHUNK / stride;
+            int chunkCount = (int) ((count + recordsPerChunk - 1) / recordsPerChunk);
+            this.chunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long records = Math.min(recordsPerChunk, count - i * recordsPerChunk);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        offset + i * recordsPerChunk * stride, records * stride);
+            }
+        }
+
+        ByteBuffer chunk(long record) {
+            return chunks[(int) (record / recordsPerChunk)];
+        }
+
+        int offset(long record) {
+            return (int) (record % recordsPerChunk) * stride;
+        }
+    }
+
+    /**
+     * writes a snapshot. Nodes have to be added in breadth-first
+     * order and the points of the leaves in the same order.
+     */
+    public static class Writer {
+        private RandomAccessFile raf;
+        private DataOutputStream pointOutput;
+        private ByteArrayOutputStream nodeTable;
+        private DataOutputStream nodeOutput;
+        private LabelDictionary labels;
+        private int dimension;
+        private long nodeCount;
+        private long pointCount;
+
+        public Writer(File file, int dimension) throws IOException {
+            this.dimension = dimension;
+            this.labels = new LabelDictionary();
+            this.raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            this.pointOutput = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(raf.getFD()), 64 * 1024));
+            pointOutput.write(new byte[HEADER_SIZE]);
+            this.nodeTable = new ByteArrayOutputStream();
+            this.nodeOutput = new DataOutputStream(nodeTable);
+        }
+
+        /**
+         * @param first index of the first child node, or for a leaf
+         *              the index its first point is added at
+         */
+        public void addNode(boolean leaf, int count, long first, float[][] mbr) throws IOException {
+            nodeOutput.writeInt(leaf ? 1 : 0);
+            nodeOutput.writeInt(count);
+            nodeOutput.writeLong(first);
+            for (int i = 0; i < dimension; i++) {
+                nodeOutput.writeFloat(mbr[i][0]);
+                nodeOutput.writeFloat(mbr[i][1]);
+            }
+            nodeCount++;
+        }
+
+        /**
+         * @return index of the added point
+         */
+        public long addPoint(PointDTO point) throws IOException {
+            pointOutput.writeFloat(point.oid);
+            pointOutput.writeInt(labels.intern(point.label));
+            pointOutput.writeLong(point.time);
+            for (int i = 0; i < dimension; i++) {
+                pointOutput.writeFloat(point.coords[i]);
+            }
+            return pointCount++;
+        }
+
+        public long pointCount() {
+            return pointCount;
+        }
+
+        /**
+         * appends the node table and the labels and writes the header
+         */
+        public void close() throws IOException {
+            long nodeOffset = HEADER_SIZE + pointCount * pointStride(dimension);
+            nodeTable.writeTo(pointOutput);
+            long labelOffset = nodeOffset + nodeTable.size();
+            for (int i = 0; i < labels.size(); i++) {
+                pointOutput.writeUTF(labels.get(i));
+            }
+            pointOutput.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, dimension);
+            header.putLong(16, nodeCount);
+            header.putLong(24, nodeOffset);
+            header.putLong(32, pointCount);
+            header.putLong(40, HEADER_SIZE);
+            header.putLong(48, labelOffset);
+            header.putInt(56, labels.size());
+            raf.getChannel().write(header, 0);
+            raf.getFD().sync();
+            pointOutput.close();
+            raf.close();
+        }
+    }
+}
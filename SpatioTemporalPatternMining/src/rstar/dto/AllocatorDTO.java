@@ -0,0 +1,11 @@
+package rstar.dto;
+
+public class AllocatorDTO extends AbstractDTO {
+    public long nextId;
+    public long[] freeIds;
+
+    public AllocatorDTO(long nextId, long[] freeIds) {
+        this.nextId = nextId;
+        this.freeIds = freeIds;
+    }
+}
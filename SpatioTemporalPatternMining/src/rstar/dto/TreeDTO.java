@@ -4,10 +4,17 @@ public class TreeDTO extends AbstractDTO {
     public int dimension;
     public int pagesize;
     public long rootPointer;
+    public int maxChildren;
+    public int minChildren;
+    public AllocatorDTO allocator;
 
-    public TreeDTO(int dimension, int pagesize, long rootPointer) {
+    public TreeDTO(int dimension, int pagesize, long rootPointer, int maxChildren, int minChildren,
+                   AllocatorDTO allocator) {
         this.dimension = dimension;
         this.pagesize = pagesize;
         this.rootPointer = rootPointer;
+        this.maxChildren = maxChildren;
+        this.minChildren = minChildren;
+        this.allocator = allocator;
     }
 }
@@ -1,5 +1,6 @@
 package rstar.interfaces;
 
+import rstar.Durability;
 import rstar.nodes.RStarNode;
 import rstar.dto.PointDTO;
 import rstar.dto.TreeDTO;
@@ -12,6 +13,13 @@ public interface IDiskQuery {
 
     RStarNode loadNode(long nodeId) throws FileNotFoundException;
 
+    /**
+     * removes a node from the store and releases its id
+     * for reuse. Not called by the tree, which drops no
+     * nodes; see PageAllocator.
+     */
+    void deleteNode(long nodeId);
+
     long savePoint(PointDTO pointDTO);
 
     PointDTO loadPoint(long pointer);
@@ -19,4 +27,42 @@ public interface IDiskQuery {
     int saveTree(TreeDTO tree, File saveFile);
 
     TreeDTO loadTree(File saveFile);
+
+    /**
+     * marks the end of one tree operation: the writes since the
+     * previous commit belong together and are recovered all or none
+     * @param tree metadata of the tree after the operation
+     */
+    void commit(TreeDTO tree);
+
+    /**
+     * @param durability how the writes of committed operations are protected
+     * @param groupSize number of commits synced together
+     * @param groupInterval max milliseconds a commit waits for its sync
+     */
+    void setDurability(Durability durability, int groupSize, long groupInterval);
+
+    /**
+     * removes all nodes and points from the store
+     */
+    void clear();
+
+    /**
+     * releases the files and locks held by the store
+     */
+    void close();
+
+    /**
+     * creates an empty store of the same kind that a compaction
+     * writes the rewritten tree into
+     */
+    IDiskQuery createCompactionTarget();
+
+    /**
+     * replaces the contents of this store with those of a
+     * completed compaction target
+     * @param target store returned by createCompactionTarget
+     * @param tree metadata of the compacted tree
+     */
+    void commitCompaction(IDiskQuery target, TreeDTO tree);
 }
@@ -1,27 +1,29 @@
 package rstar.nodes;
 
+import rstar.TreeContext;
 import rstar.dto.NodeDTO;
 import rstar.spatial.HyperRectangle;
 import rstar.spatial.SpatialPoint;
-import util.Constants;
 
 import java.util.ArrayList;
 
 public class RStarInternal extends RStarNode {
 //    private ArrayList<RStarNode> children;
 
-    public RStarInternal(int dimension) {
+    public RStarInternal(TreeContext context) {
+        this.context = context;
         createId();
-        _dimension = dimension;
-        childPointers = new ArrayList<Long>(Constants.MAX_CHILDREN);
-        mbr = new HyperRectangle(dimension);
+        _dimension = context.getDimension();
+        childPointers = new ArrayList<Long>(context.getMaxChildren());
+        mbr = new HyperRectangle(_dimension);
     }
 
-    public RStarInternal(NodeDTO dto, long nodeId) {
+    public RStarInternal(NodeDTO dto, long nodeId, TreeContext context) {
+        this.context = context;
         this.nodeId = nodeId;
         this.setParentId(dto.parentId);
+        _dimension = context.getDimension();
         this.childPointers = dto.children;
-//        children = new ArrayList<RStarNode>(Constants.MAX_CHILDREN);
         this.mbr = new HyperRectangle(dto.mbr);
     }
 
@@ -32,7 +34,7 @@ public class RStarInternal extends RStarNode {
 
     @Override
     public boolean isNotFull() {
-        return childPointers.size() < Constants.MAX_CHILDREN;
+        return childPointers.size() < context.getMaxChildren();
     }
 
     @Override
@@ -1,27 +1,29 @@
 package rstar.nodes;
 
+import rstar.TreeContext;
 import rstar.dto.NodeDTO;
 import rstar.spatial.HyperRectangle;
 import rstar.spatial.SpatialPoint;
-import util.Constants;
 
 import java.util.ArrayList;
 
 public class RStarLeaf extends RStarNode {
     public ArrayList<SpatialPoint> loadedChildren;
 
-    public RStarLeaf(int dimension) {
+    public RStarLeaf(TreeContext context) {
+        this.context = context;
         createId();
-        _dimension = dimension;
+        _dimension = context.getDimension();
         loadedChildren = new ArrayList<SpatialPoint>();
         childPointers = new ArrayList<Long>();
-        mbr = new HyperRectangle(dimension);
+        mbr = new HyperRectangle(_dimension);
     }
 
-    public RStarLeaf(NodeDTO dto, long nodeId) {
+    public RStarLeaf(NodeDTO dto, long nodeId, TreeContext context) {
+        this.context = context;
         this.nodeId = nodeId;
         this.setParentId(dto.parentId);
-        _dimension = Constants.DIMENSION;
+        _dimension = context.getDimension();
         childPointers = dto.children;
         loadedChildren = new ArrayList<SpatialPoint>();
         mbr = new HyperRectangle(dto.mbr);
@@ -34,7 +36,7 @@ public class RStarLeaf extends RStarNode {
 
     @Override
     public boolean isNotFull() {
-        return ((childPointers.size() + loadedChildren.size()) < Constants.MAX_CHILDREN);
+        return ((childPointers.size() + loadedChildren.size()) < context.getMaxChildren());
     }
 
     @Override
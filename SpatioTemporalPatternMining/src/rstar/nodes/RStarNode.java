@@ -1,15 +1,16 @@
 package rstar.nodes;
 
+import rstar.TreeContext;
 import rstar.interfaces.IDtoConvertible;
 import rstar.interfaces.IRStarNode;
 import rstar.spatial.HyperRectangle;
-import util.Utils;
 
 import java.util.ArrayList;
 
 public abstract class RStarNode implements IDtoConvertible, IRStarNode{
     protected long nodeId = -1;
-    protected static int _dimension;
+    protected int _dimension;
+    protected TreeContext context;
     protected HyperRectangle mbr;
     public ArrayList<Long> childPointers;   //ids of all children = file names are derivable from this.
 
@@ -22,7 +23,7 @@ public abstract class RStarNode implements IDtoConvertible, IRStarNode{
     @Override
     public void createId() {
         if (nodeId == -1) {
-            nodeId = Utils.getRandomId();
+            nodeId = context.nextNodeId();
             if(nodeId < 0)
                 nodeId = -1 * nodeId;
         }
@@ -1,15 +1,16 @@
 package rstar.nodes;
 
-import rstar.StorageManager;
+import rstar.TreeContext;
 import rstar.dto.PointDTO;
+import rstar.interfaces.IDiskQuery;
 import rstar.spatial.HyperRectangle;
 import rstar.spatial.SpatialComparator;
 import rstar.spatial.SpatialPoint;
-import util.Constants;
 
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
 import static java.util.Arrays.sort;
 
@@ -19,15 +20,28 @@ import static java.util.Arrays.sort;
 public class RStarSplit {
     private int dimension;
     public int bestSortOrder;
-    private StorageManager disk;
+    private IDiskQuery disk;
+    private TreeContext context;
 
-    public RStarSplit(int dimension, StorageManager storageManager) {
-        this.dimension = dimension;
+    public RStarSplit(TreeContext context, IDiskQuery storageManager) {
+        this.context = context;
+        this.dimension = context.getDimension();
         this.disk = storageManager;
         this.bestSortOrder = -1;
     }
 
-    public RStarLeaf chooseLeaf(RStarNode startNode, HyperRectangle newMbr) {
+    /**
+     * finds the most appropriate leaf for newMbr below startNode
+     * @param startNode the node to start descending from
+     * @param newMbr mbr of the entry to be inserted
+     * @param path if not null, every node visited on the way down
+     *             (startNode to the chosen leaf) is appended to it
+     * @return the chosen leaf
+     */
+    public RStarLeaf chooseLeaf(RStarNode startNode, HyperRectangle newMbr, List<RStarNode> path) {
+        if (path != null) {
+            path.add(startNode);
+        }
         if(startNode.isLeaf()) {
             return (RStarLeaf)startNode;
         }
@@ -85,7 +99,7 @@ public class RStarSplit {
                 }
 
                 if(cands.size() == 1)
-                    return chooseLeaf(cands.get(0), newMbr);
+                    return chooseLeaf(cands.get(0), newMbr, path);
                     //break ties
                 else{
                     ArrayList<Double> minAreas = new ArrayList<Double>();
@@ -107,7 +121,7 @@ public class RStarSplit {
                     }
 
                     if(cands2.size() == 1)
-                        return chooseLeaf(cands2.get(0), newMbr);
+                        return chooseLeaf(cands2.get(0), newMbr, path);
                     else {
                         //again break ties
                         double minArea = Double.MAX_VALUE;
@@ -119,7 +133,7 @@ public class RStarSplit {
                                 candidate = candNode;
                             }
                         }
-                        return chooseLeaf(candidate, newMbr);
+                        return chooseLeaf(candidate, newMbr, path);
                     }
                 }
             } else {
@@ -143,7 +157,7 @@ public class RStarSplit {
                 }
 
                 if(cands.size() == 1)
-                    return chooseLeaf(cands.get(0), newMbr);
+                    return chooseLeaf(cands.get(0), newMbr, path);
                 else {
                     //again break ties
                     double minArea = Double.MAX_VALUE;
@@ -155,7 +169,7 @@ public class RStarSplit {
                             candidate = candNode;
                         }
                     }
-                    return chooseLeaf(candidate, newMbr);
+                    return chooseLeaf(candidate, newMbr, path);
                 }
             }
         }
@@ -184,14 +198,14 @@ public class RStarSplit {
             final SpatialComparator compMax = new SpatialComparator(i, HyperRectangle.MAX_CORD);
             Collections.sort(maxSorting, compMax);
 
-            for (int k = 0; k <= (entries.size() - 2 * Constants.MIN_CHILDREN); k++) {
-                HyperRectangle mbr1 = new HyperRectangle(dimension, minSorting.subList(0, Constants.MIN_CHILDREN + k));
-                HyperRectangle mbr2 = new HyperRectangle(dimension, minSorting.subList(Constants.MIN_CHILDREN + k, entries.size()));
+            for (int k = 0; k <= (entries.size() - 2 * context.getMinChildren()); k++) {
+                HyperRectangle mbr1 = new HyperRectangle(dimension, minSorting.subList(0, context.getMinChildren() + k));
+                HyperRectangle mbr2 = new HyperRectangle(dimension, minSorting.subList(context.getMinChildren() + k, entries.size()));
 
                 margin += mbr1.margin() + mbr2.margin();
 
-                mbr1 = new HyperRectangle(dimension, maxSorting.subList(0, Constants.MIN_CHILDREN + k));
-                mbr2 = new HyperRectangle(dimension, maxSorting.subList(Constants.MIN_CHILDREN + k, entries.size()));
+                mbr1 = new HyperRectangle(dimension, maxSorting.subList(0, context.getMinChildren() + k));
+                mbr2 = new HyperRectangle(dimension, maxSorting.subList(context.getMinChildren() + k, entries.size()));
                 margin += mbr1.margin() + mbr2.margin();
             }
 
@@ -219,14 +233,14 @@ public class RStarSplit {
             final SpatialComparator compMax = new SpatialComparator(i, HyperRectangle.MAX_CORD);
             Collections.sort(maxSorting, compMax);
 
-            for (int k = 0; k <= (children.size() - 2 * Constants.MIN_CHILDREN); k++) {
-                HyperRectangle mbr1 = new HyperRectangle(dimension, minSorting.subList(0, Constants.MIN_CHILDREN + k));
-                HyperRectangle mbr2 = new HyperRectangle(dimension, minSorting.subList(Constants.MIN_CHILDREN + k, children.size()));
+            for (int k = 0; k <= (children.size() - 2 * context.getMinChildren()); k++) {
+                HyperRectangle mbr1 = new HyperRectangle(dimension, minSorting.subList(0, context.getMinChildren() + k));
+                HyperRectangle mbr2 = new HyperRectangle(dimension, minSorting.subList(context.getMinChildren() + k, children.size()));
 
                 margin += mbr1.margin() + mbr2.margin();
 
-                mbr1 = new HyperRectangle(dimension, maxSorting.subList(0, Constants.MIN_CHILDREN + k));
-                mbr2 = new HyperRectangle(dimension, maxSorting.subList(Constants.MIN_CHILDREN + k, children.size()));
+                mbr1 = new HyperRectangle(dimension, maxSorting.subList(0, context.getMinChildren() + k));
+                mbr2 = new HyperRectangle(dimension, maxSorting.subList(context.getMinChildren() + k, children.size()));
                 margin += mbr1.margin() + mbr2.margin();
             }
 
@@ -261,12 +275,12 @@ public class RStarSplit {
         Collections.sort(maxSorting, compMax);
 
         // the split point (first set to minimum entries in the node)
-        splitPoint = Constants.MIN_CHILDREN;
+        splitPoint = context.getMinChildren();
         // best value for the overlap
         double minOverlap = Double.MAX_VALUE;
         // the volume of mbr1 and mbr2
         double volume = 0.0;
-        int minEntries = Constants.MIN_CHILDREN;
+        int minEntries = context.getMinChildren();
 
         bestSortOrder = -1;
 
@@ -312,12 +326,12 @@ public class RStarSplit {
         Collections.sort(maxSorting, compMax);
 
         // the split point (first set to minimum entries in the node)
-        splitPoint = Constants.MIN_CHILDREN;
+        splitPoint = context.getMinChildren();
         // best value for the overlap
         double minOverlap = Double.MAX_VALUE;
         // the volume of mbr1 and mbr2
         double volume = 0.0;
-        int minEntries = Constants.MIN_CHILDREN;
+        int minEntries = context.getMinChildren();
 
         bestSortOrder = -1;
 
@@ -371,7 +385,7 @@ public class RStarSplit {
 
         splittingLeaf.loadedChildren = new ArrayList<SpatialPoint>();
         splittingLeaf.childPointers = new ArrayList<Long>();
-        RStarLeaf newChild = new RStarLeaf(dimension);
+        RStarLeaf newChild = new RStarLeaf(context);
 
         HyperRectangle newMbr1 = new HyperRectangle(dimension);     //adjusted mbr for splittingLeaf
         HyperRectangle newMbr2 = new HyperRectangle(dimension);     //adjusted mbr for newChild
@@ -423,7 +437,7 @@ public class RStarSplit {
         sort(sorting, comp);
 
         splittingNode.childPointers = new ArrayList<Long>();
-        RStarInternal createdNode = new RStarInternal(dimension);
+        RStarInternal createdNode = new RStarInternal(context);
 
         HyperRectangle newMbr1 = new HyperRectangle(dimension);
         HyperRectangle newMbr2 = new HyperRectangle(dimension);
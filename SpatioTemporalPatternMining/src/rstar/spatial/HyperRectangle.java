@@ -3,7 +3,6 @@ package rstar.spatial;
 import rstar.nodes.RStarNode;
 import rstar.dto.MbrDTO;
 import rstar.interfaces.IDtoConvertible;
-import util.Constants;
 
 import java.util.List;
 
@@ -49,7 +48,7 @@ public class HyperRectangle implements IDtoConvertible {
     }
 
     public HyperRectangle(MbrDTO dto) {
-        this._dimension = Constants.DIMENSION;
+        this._dimension = dto.points.length;
         this.points = dto.points;
     }
 
@@ -116,17 +115,29 @@ public class HyperRectangle implements IDtoConvertible {
 //        }
 //    }
 
-    public void update(HyperRectangle addedRegion) {
+    /**
+     * enlarges this MBR to cover addedRegion
+     * @param addedRegion the region to be covered
+     * @return true if this MBR changed, false if it
+     * already covered addedRegion
+     */
+    public boolean update(HyperRectangle addedRegion) {
         float[][] newPoints = addedRegion.getPoints();
         assert newPoints.length == _dimension;
+        boolean changed = false;
         for (int j = 0; j < _dimension; j++) {
-            if (points[j][MAX_CORD] == 0 || points[j][MAX_CORD] < newPoints[j][MAX_CORD]) {
+            if ((points[j][MAX_CORD] == 0 || points[j][MAX_CORD] < newPoints[j][MAX_CORD])
+                    && points[j][MAX_CORD] != newPoints[j][MAX_CORD]) {
                 points[j][MAX_CORD] = newPoints[j][MAX_CORD];
+                changed = true;
             }
-            if (points[j][MIN_CORD] == 0 || points[j][MIN_CORD] > newPoints[j][MIN_CORD]) {
+            if ((points[j][MIN_CORD] == 0 || points[j][MIN_CORD] > newPoints[j][MIN_CORD])
+                    && points[j][MIN_CORD] != newPoints[j][MIN_CORD]) {
                 points[j][MIN_CORD] = newPoints[j][MIN_CORD];
+                changed = true;
             }
         }
+        return changed;
     }
 
     /**
@@ -165,7 +176,7 @@ public class HyperRectangle implements IDtoConvertible {
      */
     public double deltaV_onInclusion(HyperRectangle newmbr) {
         HyperRectangle tempMbr = new HyperRectangle(_dimension);
-        tempMbr.setPoints(points);
+        tempMbr.update(this);           // work on a copy, this MBR must stay untouched
         tempMbr.update(newmbr);
 
         return tempMbr.volume() - this.volume();
@@ -1,7 +1,6 @@
 package rstar.spatial;
 
 import rstar.nodes.RStarNode;
-import util.Constants;
 
 import java.util.Comparator;
 
@@ -43,9 +42,9 @@ public class SpatialComparator implements Comparator {
         if (o1 instanceof SpatialPoint) {
             SpatialPoint[] temp = new SpatialPoint[1];
             temp[0] = (SpatialPoint) o1;
-            mbr1 = new HyperRectangle(Constants.DIMENSION, temp);
+            mbr1 = new HyperRectangle(((SpatialPoint) o1).getDimension(), temp);
             temp[0] = (SpatialPoint)o2;
-            mbr2 = new HyperRectangle(Constants.DIMENSION, temp);
+            mbr2 = new HyperRectangle(((SpatialPoint) o2).getDimension(), temp);
         }
         else if (o1 instanceof RStarNode) {
              mbr1 = ((RStarNode)o1).getMBR();
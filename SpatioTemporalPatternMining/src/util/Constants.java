@@ -11,10 +11,69 @@ public class Constants {
     public static final String DATA_FILE = "dataStore.dat";
     public static final String NODE_FILE_PREFIX = "rstar_";
     public static final String NODE_FILE_SUFFIX = ".node";
+    public static final String LOCK_FILE = "tree.lock";
+    public static final String LABEL_FILE = "labels.dat";
+    public static final String JOURNAL_FILE = "journal.log";
 
-    public static int PAGESIZE = 8*1024;
-    public static int MAX_CHILDREN;
-    public static int MIN_CHILDREN;
-    public static int DIMENSION = 2;
+    public static final int PAGESIZE = 8*1024;
+
+    /** group commit of the journal: syncs after this many operations ... */
+    public static final int JOURNAL_GROUP_SIZE = 64;
+    /** ... or after this many milliseconds */
+    public static final long JOURNAL_GROUP_INTERVAL = 100;
+    /** journaled writes are applied to the node files beyond this size */
+    public static final long JOURNAL_CHECKPOINT_SIZE = 16 * 1024 * 1024;
+
+    /** R* trees perform best with nodes at least 40% full */
+    public static final float MIN_FILL_FACTOR = 0.4f;
+    /** node capacities of a tree that is not configured otherwise */
+    public static final int DEFAULT_MAX_CHILDREN = 10;
+    public static final int DEFAULT_MIN_CHILDREN = 4;
+    public static final int POINTER_SIZE = 8;       // size of a child/parent id in memory
+    public static final int FLOAT_SIZE = 4;
+    /** most bytes a varint of a long takes */
+    public static final int MAX_VARINT_SIZE = 10;
+    /** most bytes a varint of an int takes */
+    public static final int MAX_INT_VARINT_SIZE = 5;
+
+    /**
+     * most bytes one child takes in an encoded node page: nodes keep
+     * no child mbrs, only the child id as a varint delta to the
+     * previous child (see PageCodec.encodeNode).
+     */
+    public static int entrySize(int dimension) {
+        return MAX_VARINT_SIZE;
+    }
+
+    /**
+     * most bytes the fixed part of an encoded node page takes: the
+     * magic and leaf bytes, the parent id, the dimension and child
+     * count, and the node's own mbr, a float and the varint of a
+     * difference of float bits per dimension.
+     */
+    public static int nodeHeaderSize(int dimension) {
+        return 2 + MAX_VARINT_SIZE + 2 * MAX_INT_VARINT_SIZE + dimension * (FLOAT_SIZE + MAX_INT_VARINT_SIZE);
+    }
+
+    /**
+     * M = (pagesize - header size) / entry size, the most children
+     * a node can have so that its encoded page always fits. This is
+     * only used for trees configured by page (TreeConfig.forPage);
+     * as children keep their own mbrs, a search loads every child of
+     * a node it enters, so a full page is not necessarily faster.
+     * FanoutCalibrator measures that.
+     */
+    public static int maxChildrenForPage(int pagesize, int dimension) {
+        return Math.max(3, (pagesize - nodeHeaderSize(dimension)) / entrySize(dimension));
+    }
+
+    /**
+     * m = M * 40%, but at least 1 and never more than M/2
+     * so that both halves of a split are valid nodes.
+     */
+    public static int minChildrenFor(int maxChildren) {
+        int min = (int) (maxChildren * MIN_FILL_FACTOR);
+        return Math.max(1, Math.min(min, maxChildren / 2));
+    }
 }
 
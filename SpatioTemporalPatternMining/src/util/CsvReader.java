@@ -0,0 +1,443 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * reads comma separated input line by line and parses fields
+ * straight from the bytes, without creating strings for them.
+ * Small files are read through a buffer, large ones are memory
+ * mapped window by window. Fields follow String.split(","): trailing
+ * empty fields are dropped, and number fields may be surrounded by
+ * whitespace like for Float.parseFloat. A reader can be limited to a
+ * byte range of the file, so chunks of one file can be read in parallel.
+ */
+public class CsvReader {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long MAP_THRESHOLD = 64L << 20;
+    private static final long MAP_WINDOW = 256L << 20;
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long endPosition;
+    private boolean mapped;
+
+    private ByteBuffer buffer;
+    private byte[] bytes;            // backing array of a read buffer
+    private long bufferStart;        // file position of buffer index 0
+    private int limit;
+
+    private int lineStart;
+    private int lineEnd;
+    private int next;
+    private int lineNumber;
+    private int[] fieldStart;
+    private int[] fieldEnd;
+    private int fieldCount;
+
+    private byte[][] labelKeys;
+    private int[] labelIds;
+    private int labelCount;
+
+    public CsvReader(File input) throws IOException {
+        this(input, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * reads the lines between two file positions, both of which have
+     * to be at the beginning of a line or at the end of the file.
+     * @param start position of the first byte read
+     * @param end position after the last byte read, capped at the file size
+     */
+    public CsvReader(File input, long start, long end) throws IOException {
+        this.file = new RandomAccessFile(input, "r");
+        this.channel = file.getChannel();
+        this.endPosition = Math.min(end, channel.size());
+        this.mapped = endPosition - start > MAP_THRESHOLD;
+        this.fieldStart = new int[16];
+        this.fieldEnd = new int[16];
+        this.labelKeys = new byte[64][];
+        this.labelIds = new int[64];
+        if (!mapped) {
+            bytes = new byte[BUFFER_SIZE];
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        load(start);
+    }
+
+    /**
+     * splits a file into about count ranges that start at the
+     * beginning of a line, for use with CsvReader(File, long, long)
+     * @param from position where the first range starts
+     * @return count + 1 or fewer ascending positions, the first is
+     * from and the last the file size
+     */
+    public static long[] split(File input, long from, int count) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(input, "r");
+        try {
+            long size = raf.length();
+            long[] bounds = new long[count + 1];
+            bounds[0] = from;
+            int n = 1;
+            byte[] scan = new byte[4096];
+            for (int i = 1; i < count; i++) {
+                long position = Math.max(from + (size - from) * i / count, bounds[n - 1]);
+                // move to the byte after the next line break
+                long boundary = -1;
+                while (boundary < 0 && position < size) {
+                    raf.seek(position);
+                    int read = raf.read(scan);
+                    for (int j = 0; j < read && boundary < 0; j++) {
+                        if (scan[j] == '\n')
+                            boundary = position + j + 1;
+                    }
+                    position += read;
+                }
+                if (boundary < 0 || boundary >= size)
+                    break;
+                if (boundary > bounds[n - 1])
+                    bounds[n++] = boundary;
+            }
+            bounds[n++] = size;
+            return Arrays.copyOf(bounds, n);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * moves to the next line
+     * @return false at the end of the file
+     */
+    public boolean nextLine() throws IOException {
+        int end = findLineEnd(next);
+        if (end < 0) {
+            if (bufferStart + limit >= endPosition) {
+                if (next >= limit)
+                    return false;
+                end = limit;            // last line without a line break
+            } else {
+                load(bufferStart + next);
+                end = findLineEnd(0);
+                if (end < 0) {
+                    if (bufferStart + limit < endPosition)
+                        throw new IOException("Line " + (lineNumber + 1) + " is longer than the read buffer");
+                    end = limit;
+                }
+            }
+        }
+        lineStart = next;
+        next = end < limit ? end + 1 : end;
+        lineEnd = end > lineStart && byteAt(end - 1) == '\r' ? end - 1 : end;
+        lineNumber++;
+        splitFields();
+        return true;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return file position of the line after the current one
+     */
+    public long position() {
+        return bufferStart + next;
+    }
+
+    /**
+     * @return number of fields of the current line, as
+     * line.split(",").length would return
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the current line as a string
+     */
+    public String getLine() {
+        return decode(lineStart, lineEnd);
+    }
+
+    public String getString(int field) {
+        checkField(field);
+        return decode(fieldStart[field], fieldEnd[field]);
+    }
+
+    public int getInt(int field) {
+        long value = getLong(field);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new NumberFormatException("For input string: \"" + getString(field) + "\"");
+        return (int) value;
+    }
+
+    /**
+     * @return the field parsed like Long.parseLong would
+     */
+    public long getLong(int field) {
+        checkField(field);
+        int pos = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = false;
+        if (pos < end && (byteAt(pos) == '-' || byteAt(pos) == '+')) {
+            negative = byteAt(pos) == '-';
+            pos++;
+        }
+        if (pos == end || end - pos > 18)
+            return Long.parseLong(getString(field));
+
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = byteAt(pos) - '0';
+            if (digit < 0 || digit > 9)
+                return Long.parseLong(getString(field));
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return the field parsed to the same value Double.parseDouble
+     * would return
+     */
+    public double getDouble(int field) {
+        checkField(field);
+        double value = parseDecimal(field);
+        return Double.isNaN(value) ? Double.parseDouble(getString(field)) : value;
+    }
+
+    /**
+     * @return the field parsed to the same value Float.parseFloat
+     * would return
+     */
+    public float getFloat(int field) {
+        checkField(field);
+        double value = parseDecimal(field);
+        if (!Double.isNaN(value)) {
+            // rounding the exact double again to float is only off when
+            // the double lies exactly halfway between two floats
+            boolean halfway = (Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) == 0x10000000L;
+            if (value == 0 || (!halfway && Math.abs(value) >= Float.MIN_NORMAL))
+                return (float) value;
+        }
+        return Float.parseFloat(getString(field));
+    }
+
+    /**
+     * interns the field into dictionary. A label is turned into a
+     * string only the first time it is seen by this reader.
+     * @return id of the label in dictionary
+     */
+    public int getLabel(int field, LabelDictionary dictionary) {
+        checkField(field);
+        int start = fieldStart[field];
+        int length = fieldEnd[field] - start;
+        int hash = 1;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + byteAt(i);
+        }
+
+        int mask = labelKeys.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            byte[] key = labelKeys[slot];
+            if (key == null)
+                break;
+            if (key.length == length && equalsBytes(key, start))
+                return labelIds[slot];
+        }
+
+        byte[] key = new byte[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = byteAt(start + i);
+        }
+        int id = dictionary.intern(new String(key, CHARSET));
+        if (2 * (labelCount + 1) > labelKeys.length)
+            growLabels();
+        putLabel(key, hash, id);
+        return id;
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * parses a plain decimal number when its value is exactly
+     * representable as mantissa times a power of ten that a double
+     * holds exactly. Otherwise returns NaN and the caller falls back.
+     */
+    private double parseDecimal(int field) {
+        int pos = fieldStart[field];
+        int end = fieldEnd[field];
+        while (pos < end && byteAt(pos) <= ' ') pos++;
+        while (end > pos && byteAt(end - 1) <= ' ') end--;
+
+        boolean negative = false;
+        if (pos < end && (byteAt(pos) == '-' || byteAt(pos) == '+')) {
+            negative = byteAt(pos) == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        for (; pos < end; pos++) {
+            byte b = byteAt(pos);
+            if (b >= '0' && b <= '9') {
+                if (mantissa == 0 && b == '0') {
+                    if (point) scale++;
+                } else {
+                    if (++digits > 15)
+                        return Double.NaN;
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (point) scale++;
+                }
+                continue;
+            }
+            if (b == '.' && !point) {
+                point = true;
+                continue;
+            }
+            return Double.NaN;      // exponents, NaN, Infinity, garbage
+        }
+        if (digits == 0 && !hasDigit(field))
+            return Double.NaN;
+        if (scale >= POWERS_OF_TEN.length)
+            return Double.NaN;
+
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private boolean hasDigit(int field) {
+        for (int i = fieldStart[field]; i < fieldEnd[field]; i++) {
+            if (byteAt(i) >= '0' && byteAt(i) <= '9')
+                return true;
+        }
+        return false;
+    }
+
+    private void splitFields() {
+        fieldCount = 0;
+        int start = lineStart;
+        boolean separated = false;
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (byteAt(i) == ',') {
+                addField(start, i);
+                start = i + 1;
+                separated = true;
+            }
+        }
+        addField(start, lineEnd);
+        if (separated) {
+            // like String.split, drop trailing empty fields
+            while (fieldCount > 0 && fieldStart[fieldCount - 1] == fieldEnd[fieldCount - 1])
+                fieldCount--;
+        }
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStart.length) {
+            fieldStart = Arrays.copyOf(fieldStart, fieldCount * 2);
+            fieldEnd = Arrays.copyOf(fieldEnd, fieldCount * 2);
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private void checkField(int field) {
+        if (field < 0 || field >= fieldCount)
+            throw new ArrayIndexOutOfBoundsException(field);
+    }
+
+    private int findLineEnd(int from) {
+        for (int i = from; i < limit; i++) {
+            if (byteAt(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * fills the buffer with the file starting at position
+     */
+    private void load(long position) throws IOException {
+        if (mapped) {
+            long size = Math.min(MAP_WINDOW, endPosition - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            limit = (int) size;
+        } else {
+            int size = (int) Math.min(bytes.length, endPosition - position);
+            int read = 0;
+            while (read < size) {
+                int n = channel.read(ByteBuffer.wrap(bytes, read, size - read), position + read);
+                if (n < 0)
+                    break;
+                read += n;
+            }
+            limit = read;
+        }
+        bufferStart = position;
+        next = 0;
+    }
+
+    private byte byteAt(int index) {
+        return bytes != null ? bytes[index] : buffer.get(index);
+    }
+
+    private String decode(int start, int end) {
+        byte[] copy = new byte[end - start];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = byteAt(start + i);
+        }
+        return new String(copy, CHARSET);
+    }
+
+    private boolean equalsBytes(byte[] key, int start) {
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != byteAt(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    private void putLabel(byte[] key, int hash, int id) {
+        int mask = labelKeys.length - 1;
+        int slot = hash & mask;
+        while (labelKeys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        labelKeys[slot] = key;
+        labelIds[slot] = id;
+        labelCount++;
+    }
+
+    private void growLabels() {
+        byte[][] keys = labelKeys;
+        int[] ids = labelIds;
+        labelKeys = new byte[keys.length * 2][];
+        labelIds = new int[keys.length * 2];
+        labelCount = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                int hash = 1;
+                for (byte b : keys[i]) {
+                    hash = 31 * hash + b;
+                }
+                putLabel(keys[i], hash, ids[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * reads an event file into an EventTable. The first line is a header
+ * and is kept as it is; each following line holds oid, coordinates,
+ * label and time. The lines after the header are split into chunks
+ * at line breaks, and the chunks are parsed on several threads into
+ * tables of their own that are then joined in file order. Label ids
+ * are assigned in the order the labels first appear in the file, so
+ * the result does not depend on the number of threads.
+ */
+public class EventLoader {
+    /** files are not split into chunks smaller than this */
+    private static final long MIN_CHUNK_SIZE = 4L << 20;
+
+    private File input;
+    private int dimension;
+    private int threads;
+    private String header;
+    private int errorLine;
+    private String error;
+
+    /**
+     * @param dimension number of coordinates of an event
+     * @param threads number of threads that parse chunks
+     */
+    public EventLoader(File input, int dimension, int threads) {
+        this.input = input;
+        this.dimension = dimension;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * parses the file. Parsing stops at the first line that cannot be
+     * parsed; the events before it are returned and the line and the
+     * reason are kept in getErrorLine and getError.
+     * @param labels dictionary the labels are interned into
+     * @return the events, in file order
+     */
+    public EventTable load(LabelDictionary labels) throws IOException {
+        long start;
+        CsvReader reader = new CsvReader(input);
+        try {
+            header = reader.nextLine() ? reader.getLine() : null;
+            start = reader.position();
+        } finally {
+            reader.close();
+        }
+
+        int chunkCount = (int) Math.max(1, Math.min(threads, (input.length() - start) / MIN_CHUNK_SIZE));
+        long[] bounds = CsvReader.split(input, start, chunkCount);
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            chunks.add(new Chunk(bounds[i], bounds[i + 1]));
+        }
+        if (chunks.size() == 1) {
+            chunks.get(0).call();
+        } else {
+            parseInParallel(chunks);
+        }
+
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.events.size();
+        }
+        EventTable events = new EventTable(dimension, total);
+        errorLine = 0;
+        error = null;
+        int lines = 0;
+        for (Chunk chunk : chunks) {
+            int[] labelMap = new int[chunk.labels.size()];
+            for (int i = 0; i < labelMap.length; i++) {
+                labelMap[i] = labels.intern(chunk.labels.get(i));
+            }
+            events.addAll(chunk.events, labelMap);
+            if (chunk.errorLine > 0) {
+                errorLine = lines + chunk.errorLine;
+                error = chunk.error;
+                break;
+            }
+            lines += chunk.lines;
+        }
+        return events;
+    }
+
+    private void parseInParallel(List<Chunk> chunks) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks.size()), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "event-loader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Void>> futures = executor.invokeAll(chunks);
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + input, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException("Error while reading " + input, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the first line of the file, null if the file is empty
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @return number of the line parsing stopped at, counted from the
+     * first line after the header, or 0 if all lines were parsed
+     */
+    public int getErrorLine() {
+        return errorLine;
+    }
+
+    /**
+     * @return message of the error parsing stopped at
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * the lines between two file positions
+     */
+    private class Chunk implements Callable<Void> {
+        private final long start;
+        private final long end;
+        private EventTable events;
+        private LabelDictionary labels;
+        private int lines;
+        private int errorLine;
+        private String error;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            int labelField = dimension + 1;
+            int timeField = dimension + 2;
+            float[] cords = new float[dimension];
+            events = new EventTable(dimension, (int) Math.min(1 << 20, (end - start) / 16 + 1));
+            labels = new LabelDictionary();
+
+            CsvReader reader = new CsvReader(input, start, end);
+            try {
+                while (reader.nextLine()) {
+                    lines++;
+                    try {
+                        float oid = reader.getFloat(0);
+                        for (int i = 0; i < dimension; i++) {
+                            // missing coordinates are 0
+                            cords[i] = i + 1 < reader.fieldCount() ? reader.getFloat(i + 1) : 0;
+                        }
+                        int label = reader.getLabel(labelField, labels);
+                        int time = reader.getInt(timeField);
+                        events.add(oid, cords, label, time);
+                    } catch (RuntimeException e) {
+                        errorLine = lines;
+                        error = e.getMessage();
+                        break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package util;
+
+import rstar.spatial.SpatialPoint;
+
+import java.util.Arrays;
+
+/**
+ * events of an input file in columns of primitive arrays:
+ * oid, coordinates, label id and time. Coordinates are stored
+ * row by row in one array, dimension values per event.
+ */
+public class EventTable {
+    private int dimension;
+    private int size;
+    private float[] oids;
+    private float[] cords;
+    private int[] labels;
+    private int[] times;
+
+    public EventTable(int dimension, int capacity) {
+        capacity = Math.max(1, capacity);
+        this.dimension = dimension;
+        this.oids = new float[capacity];
+        this.cords = new float[capacity * dimension];
+        this.labels = new int[capacity];
+        this.times = new int[capacity];
+    }
+
+    /**
+     * @param cords the coordinates, copied into the table
+     * @param label id of the label in the dictionary of the table's user
+     * @return index of the added event
+     */
+    public int add(float oid, float[] cords, int label, int time) {
+        if (size == oids.length)
+            grow(size * 2);
+        oids[size] = oid;
+        System.arraycopy(cords, 0, this.cords, size * dimension, dimension);
+        labels[size] = label;
+        times[size] = time;
+        return size++;
+    }
+
+    /**
+     * appends all events of another table
+     * @param labelMap maps the label ids of other to the ids of this table
+     */
+    public void addAll(EventTable other, int[] labelMap) {
+        if (size + other.size > oids.length)
+            grow(Math.max(size + other.size, size * 2));
+        System.arraycopy(other.oids, 0, oids, size, other.size);
+        System.arraycopy(other.cords, 0, cords, size * dimension, other.size * dimension);
+        System.arraycopy(other.times, 0, times, size, other.size);
+        for (int i = 0; i < other.size; i++) {
+            int label = other.labels[i];
+            labels[size + i] = label == LabelDictionary.NO_LABEL ? label : labelMap[label];
+        }
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public float getOid(int event) {
+        return oids[event];
+    }
+
+    /**
+     * @return the events ordered by oid, to look them up with findOid;
+     *         check it with duplicateOid first, lookups of an oid that
+     *         is not unique find any one of its events
+     */
+    public int[] orderByOid() {
+        // the oid in the high half, so events sort by oid first
+        long[] keys = new long[size];
+        for (int event = 0; event < size; event++) {
+            keys[event] = ((long) sortable(oids[event]) << 32) | event;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * two events have the same oid also if their ids are distinct
+     * beyond the precision of a float
+     * @param order the events ordered by oid, as returned by orderByOid
+     * @return the first event with the same oid as an earlier one,
+     *         -1 if all oids are unique
+     */
+    public int duplicateOid(int[] order) {
+        int duplicate = -1;
+        for (int i = 1; i < order.length; i++) {
+            // events of an oid are in event order, the first of them is not a duplicate
+            if (sortable(oids[order[i]]) == sortable(oids[order[i - 1]]) && (duplicate < 0 || order[i] < duplicate))
+                duplicate = order[i];
+        }
+        return duplicate;
+    }
+
+    /**
+     * @param order the events ordered by oid, as returned by orderByOid
+     * @return the event with the oid, -1 if there is none
+     */
+    public int findOid(int[] order, float oid) {
+        int key = sortable(oid);
+        int low = 0;
+        int high = order.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int other = sortable(oids[order[mid]]);
+            if (other < key)
+                low = mid + 1;
+            else if (other > key)
+                high = mid - 1;
+            else
+                return order[mid];
+        }
+        return -1;
+    }
+
+    /**
+     * @return the bits of a float as an int in the same order as the float
+     */
+    private static int sortable(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    public float getCord(int event, int axis) {
+        return cords[event * dimension + axis];
+    }
+
+    /**
+     * @return a copy of the coordinates of an event
+     */
+    public float[] getCords(int event) {
+        return Arrays.copyOfRange(cords, event * dimension, (event + 1) * dimension);
+    }
+
+    public int getLabel(int event) {
+        return labels[event];
+    }
+
+    public int getTime(int event) {
+        return times[event];
+    }
+
+    /**
+     * @param dictionary the dictionary the label ids refer to
+     * @return the event as a new point
+     */
+    public SpatialPoint getPoint(int event, LabelDictionary dictionary) {
+        return new SpatialPoint(getCords(event), oids[event], dictionary.get(labels[event]), times[event]);
+    }
+
+    private void grow(int capacity) {
+        oids = Arrays.copyOf(oids, capacity);
+        cords = Arrays.copyOf(cords, capacity * dimension);
+        labels = Arrays.copyOf(labels, capacity);
+        times = Arrays.copyOf(times, capacity);
+    }
+}
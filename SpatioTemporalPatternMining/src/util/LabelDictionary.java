@@ -0,0 +1,54 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * maps event labels to small consecutive ids, in the
+ * order in which the labels are first seen.
+ */
+public class LabelDictionary {
+    public static final int NO_LABEL = -1;
+
+    private HashMap<String, Integer> ids;
+    private List<String> labels;
+
+    public LabelDictionary() {
+        ids = new HashMap<String, Integer>();
+        labels = new ArrayList<String>();
+    }
+
+    /**
+     * @return the id of label, a new one if label
+     * was not seen before. NO_LABEL for null.
+     */
+    public synchronized int intern(String label) {
+        if (label == null)
+            return NO_LABEL;
+
+        Integer id = ids.get(label);
+        if (id == null) {
+            id = labels.size();
+            ids.put(label, id);
+            labels.add(label);
+        }
+        return id;
+    }
+
+    /**
+     * @return the label with this id, null for NO_LABEL
+     */
+    public synchronized String get(int id) {
+        return id == NO_LABEL ? null : labels.get(id);
+    }
+
+    public synchronized int size() {
+        return labels.size();
+    }
+
+    public synchronized void clear() {
+        ids.clear();
+        labels.clear();
+    }
+}
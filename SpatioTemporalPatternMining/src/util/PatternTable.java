@@ -0,0 +1,224 @@
+package util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * counts label patterns, each a sequence of label ids. A pattern of
+ * up to MAX_PACKED_LENGTH labels with ids below MAX_PACKED_ID is packed
+ * into a long, PACKED_BITS bits per label, and counted in an open
+ * addressing table of primitive keys and counts; other patterns are
+ * kept under int array keys with a cached hash.
+ */
+public class PatternTable {
+    public static final int PACKED_BITS = 6;
+    public static final int MAX_PACKED_LENGTH = Long.SIZE / PACKED_BITS;
+    /** ids are stored plus one, so that 0 marks the end of a pattern */
+    public static final int MAX_PACKED_ID = (1 << PACKED_BITS) - 1;
+
+    /**
+     * receives the patterns of a table. The array is reused for all
+     * of them, it is only valid during the call.
+     */
+    public interface Visitor {
+        void visit(int[] labels, int length, int count);
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long EMPTY = 0L;
+
+    private long[] keys;
+    private int[] counts;
+    private int packedSize;
+    private HashMap<Key, int[]> others;
+
+    public PatternTable() {
+        keys = new long[INITIAL_CAPACITY];
+        counts = new int[INITIAL_CAPACITY];
+        others = new HashMap<Key, int[]>();
+    }
+
+    /**
+     * adds count to the pattern made of the first length ids of labels
+     */
+    public void add(int[] labels, int length, int count) {
+        long key = pack(labels, length);
+        if (key != EMPTY) {
+            addPacked(key, count);
+            return;
+        }
+        Key other = new Key(Arrays.copyOf(labels, length));
+        int[] total = others.get(other);
+        if (total == null)
+            others.put(other, new int[]{count});
+        else
+            total[0] += count;
+    }
+
+    /**
+     * @return the count of the pattern made of the first length ids
+     * of labels, 0 if it was not counted
+     */
+    public int get(int[] labels, int length) {
+        long key = pack(labels, length);
+        if (key != EMPTY) {
+            int slot = slot(key);
+            return keys[slot] == key ? counts[slot] : 0;
+        }
+        int[] total = others.get(new Key(Arrays.copyOf(labels, length)));
+        return total == null ? 0 : total[0];
+    }
+
+    /**
+     * adds the counts of another table to this one
+     */
+    public void addAll(PatternTable other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY)
+                addPacked(other.keys[i], other.counts[i]);
+        }
+        for (Map.Entry<Key, int[]> entry : other.others.entrySet()) {
+            int[] total = others.get(entry.getKey());
+            if (total == null)
+                others.put(entry.getKey(), entry.getValue().clone());
+            else
+                total[0] += entry.getValue()[0];
+        }
+    }
+
+    /**
+     * adds one to each pattern of another table, whatever its count there
+     */
+    public void addPatterns(PatternTable other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY)
+                addPacked(other.keys[i], 1);
+        }
+        for (Key key : other.others.keySet()) {
+            int[] total = others.get(key);
+            if (total == null)
+                others.put(key, new int[]{1});
+            else
+                total[0]++;
+        }
+    }
+
+    /**
+     * @return number of distinct patterns
+     */
+    public int size() {
+        return packedSize + others.size();
+    }
+
+    /**
+     * calls visitor with every pattern and its count, in no particular order
+     */
+    public void forEach(Visitor visitor) {
+        int[] labels = new int[MAX_PACKED_LENGTH];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                int length = unpack(keys[i], labels);
+                visitor.visit(labels, length, counts[i]);
+            }
+        }
+        for (Map.Entry<Key, int[]> entry : others.entrySet()) {
+            int[] key = entry.getKey().labels;
+            visitor.visit(key, key.length, entry.getValue()[0]);
+        }
+    }
+
+    private void addPacked(long key, int count) {
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            counts[slot] += count;
+            return;
+        }
+        keys[slot] = key;
+        counts[slot] = count;
+        packedSize++;
+        // at most half full, so probe sequences stay short
+        if (packedSize * 2 > keys.length)
+            grow();
+    }
+
+    /**
+     * @return the slot of key, or the empty slot it belongs in
+     */
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (keys[slot] != key && keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * @return the pattern as a long, EMPTY if it does not fit in one
+     */
+    private static long pack(int[] labels, int length) {
+        if (length > MAX_PACKED_LENGTH)
+            return EMPTY;
+        long key = EMPTY;
+        for (int i = 0; i < length; i++) {
+            int id = labels[i];
+            if (id < 0 || id >= MAX_PACKED_ID)
+                return EMPTY;
+            key = (key << PACKED_BITS) | (id + 1);
+        }
+        return key;
+    }
+
+    /**
+     * @return length of the pattern written to labels
+     */
+    private static int unpack(long key, int[] labels) {
+        int length = 0;
+        for (long rest = key; rest != 0; rest >>>= PACKED_BITS) {
+            length++;
+        }
+        for (int i = length - 1; i >= 0; i--) {
+            labels[i] = (int) (key & MAX_PACKED_ID) - 1;
+            key >>>= PACKED_BITS;
+        }
+        return length;
+    }
+
+    /**
+     * a pattern that does not fit in a long, compared by value
+     */
+    private static class Key {
+        private final int[] labels;
+        private final int hash;
+
+        Key(int[] labels) {
+            this.labels = labels;
+            this.hash = Arrays.hashCode(labels);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.equals(labels, ((Key) other).labels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
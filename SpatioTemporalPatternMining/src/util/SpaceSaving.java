@@ -0,0 +1,198 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * approximate counts of the most frequent patterns in a fixed number
+ * of counters (the Space-Saving algorithm). A pattern that is not
+ * counted yet takes over the counter with the lowest count, and
+ * starts from that count plus its own. Counts are therefore never
+ * too low, and at most getError() too high; every pattern that
+ * occurs more often than total / capacity times has a counter. As
+ * long as no counter was taken over, all counts are exact.
+ */
+public class SpaceSaving {
+    private final int capacity;
+    private int size;
+    private long total;
+    // the patterns and their counts, by counter
+    private final int[][] patterns;
+    private final int[] hashes;
+    private final int[] counts;
+    // counters as a min-heap by count, and the position of each counter in it
+    private final int[] heap;
+    private final int[] heapPosition;
+    // open addressing from pattern to counter + 1, 0 for an empty slot
+    private final int[] table;
+    private int maxError;
+
+    /**
+     * @param capacity number of patterns counted
+     */
+    public SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.patterns = new int[this.capacity][];
+        this.hashes = new int[this.capacity];
+        this.counts = new int[this.capacity];
+        this.heap = new int[this.capacity];
+        this.heapPosition = new int[this.capacity];
+        this.table = new int[Integer.highestOneBit(this.capacity * 2 - 1) << 1];
+    }
+
+    /**
+     * adds count occurrences of the pattern made of the first length ids of labels
+     */
+    public void add(int[] labels, int length, int count) {
+        total += count;
+        int hash = hash(labels, length);
+        int slot = find(labels, length, hash);
+        int counter = table[slot] - 1;
+        if (counter < 0) {
+            if (size < capacity) {
+                counter = size++;
+                heap[counter] = counter;
+                heapPosition[counter] = counter;
+                counts[counter] = 0;
+                siftUp(counter);
+            } else {
+                // the counter with the lowest count gets the new pattern
+                counter = heap[0];
+                remove(counter);
+                maxError = Math.max(maxError, counts[counter]);
+                slot = find(labels, length, hash);
+            }
+            patterns[counter] = Arrays.copyOf(labels, length);
+            hashes[counter] = hash;
+            table[slot] = counter + 1;
+        }
+        counts[counter] += count;
+        siftDown(heapPosition[counter]);
+    }
+
+    /**
+     * adds all patterns of a table with their counts
+     */
+    public void addAll(PatternTable other) {
+        other.forEach(new PatternTable.Visitor() {
+            @Override
+            public void visit(int[] labels, int length, int count) {
+                add(labels, length, count);
+            }
+        });
+    }
+
+    /**
+     * calls visitor with every counted pattern and its count, in no particular order
+     */
+    public void forEach(PatternTable.Visitor visitor) {
+        for (int counter = 0; counter < size; counter++) {
+            visitor.visit(patterns[counter], patterns[counter].length, counts[counter]);
+        }
+    }
+
+    /**
+     * @return number of patterns counted
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return sum of all counts added
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the most any count may be too high, 0 if all counts are exact
+     */
+    public int getError() {
+        return maxError;
+    }
+
+    /**
+     * @return the slot of the pattern, or the empty slot it belongs in
+     */
+    private int find(int[] labels, int length, int hash) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0) {
+            int counter = table[slot] - 1;
+            if (hashes[counter] == hash && equal(patterns[counter], labels, length))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * removes the pattern of a counter from the table, moving back
+     * the patterns after it so that no probe sequence is broken
+     */
+    private void remove(int counter) {
+        int mask = table.length - 1;
+        int slot = find(patterns[counter], patterns[counter].length, hashes[counter]);
+        table[slot] = 0;
+        for (int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = hashes[table[next] - 1] & mask;
+            // move the entry if its home is not between the hole and its slot
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                table[next] = 0;
+                slot = next;
+            }
+        }
+    }
+
+    private void siftUp(int position) {
+        int counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[counter])
+                break;
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(counter, position);
+    }
+
+    private void siftDown(int position) {
+        int counter = heap[position];
+        while (true) {
+            int child = position * 2 + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]])
+                child++;
+            if (counts[heap[child]] >= counts[counter])
+                break;
+            place(heap[child], position);
+            position = child;
+        }
+        place(counter, position);
+    }
+
+    private void place(int counter, int position) {
+        heap[position] = counter;
+        heapPosition[counter] = position;
+    }
+
+    private static int hash(int[] labels, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + labels[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equal(int[] pattern, int[] labels, int length) {
+        if (pattern.length != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (pattern[i] != labels[i])
+                return false;
+        }
+        return true;
+    }
+}
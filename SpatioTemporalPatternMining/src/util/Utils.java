@@ -10,7 +10,6 @@ import java.util.List;
  * Time: 10:00 PM
  */
 public class Utils {
-    private static long idSeed = 1;
 
     public static float getMedian(List<Long> list) {
         int size = list.size();
@@ -20,10 +19,6 @@ public class Utils {
             return list.get(size/2);
     }
 
-    public static synchronized long getRandomId() {
-        return idSeed++;
-    }
-
     public static String SpatialPointListToString(List<SpatialPoint> list) {
         String output = "";
         for (SpatialPoint point : list) {